@@ -5,13 +5,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.java.Log;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
 
 /**
  * https://adventofcode.com/2023/day/1
@@ -34,7 +42,123 @@ public class Day01 {
                 ? Digit.valueOf(digit.toUpperCase(Locale.ROOT)).digit
                 : Integer.parseInt(digit);
     }
+    // Aho-Corasick automaton folded into a dense transition table over bytes, a state reached on a word end reports its digit
+    static class DigitAutomaton {
+        final int[] transitions;
+        final int[] digits;
+
+        DigitAutomaton(int[] transitions, int[] digits) {
+            this.transitions = transitions;
+            this.digits = digits;
+        }
+
+        static DigitAutomaton of(Map<String, Integer> word_digits) {
+            int maxStates = 1 + word_digits.keySet().stream().mapToInt(String::length).sum();
+            var transitions = new int[maxStates * 256];
+            var digits = new int[maxStates];
+            int states = 1;
+
+            // -1 marks states that complete no word, 0 is a digit of its own
+            Arrays.fill(digits, -1);
+
+            // trie, with -1 for missing edges
+            Arrays.fill(transitions, -1);
+            for(Map.Entry<String, Integer> word_digit : word_digits.entrySet()) {
+                int state = 0;
+                for(byte chr : word_digit.getKey().getBytes(StandardCharsets.US_ASCII)) {
+                    int edge = state * 256 + (chr & 0xFF);
+                    if(transitions[edge] < 0) transitions[edge] = states++;
+                    state = transitions[edge];
+                }
+                digits[state] = word_digit.getValue();
+            }
+
+            // breadth first, fill missing edges from the failure state and inherit its digit
+            var failures = new int[states];
+            var queue = new ArrayDeque<Integer>();
+            for(int chr = 0; chr < 256; ++chr) {
+                int next = transitions[chr];
+                if(next < 0) transitions[chr] = 0;
+                else queue.add(next);
+            }
+            while(!queue.isEmpty()) {
+                int state = queue.poll();
+                if(digits[state] < 0) digits[state] = digits[failures[state]];
+                for(int chr = 0; chr < 256; ++chr) {
+                    int edge = state * 256 + chr;
+                    int fallback = transitions[failures[state] * 256 + chr];
+                    if(transitions[edge] < 0) transitions[edge] = fallback;
+                    else {
+                        failures[transitions[edge]] = fallback;
+                        queue.add(transitions[edge]);
+                    }
+                }
+            }
+            return new DigitAutomaton(Arrays.copyOf(transitions, states * 256), Arrays.copyOf(digits, states));
+        }
+
+        // digit of the first word completed walking from 'from' toward 'to' in steps of 'step', or -1
+        int scan(byte[] data, int from, int to, int step) {
+            int state = 0;
+            for(int i = from; i != to; i += step) {
+                state = transitions[state * 256 + (data[i] & 0xFF)];
+                if(digits[state] >= 0) return digits[state];
+            }
+            return -1;
+        }
+    }
+
+    // a forward automaton for the lead digit and one over the reversed words for the tail digit
+    static class DigitScanner {
+        final DigitAutomaton forward;
+        final DigitAutomaton reverse;
+
+        DigitScanner(Map<String, Integer> word_digits) {
+            forward = DigitAutomaton.of(word_digits);
+            reverse = DigitAutomaton.of(word_digits.entrySet().stream().collect(Collectors.toMap(
+                    word_digit -> new StringBuilder(word_digit.getKey()).reverse().toString(),
+                    Map.Entry::getValue
+            )));
+        }
+
+        int calibrate(byte[] data, int from, int to) {
+            int lead = forward.scan(data, from, to, 1);
+            if(lead < 0) throw new IllegalArgumentException("Missing lead in " + new String(data, from, to - from, StandardCharsets.US_ASCII));
+            return lead * 10 + reverse.scan(data, to - 1, from - 1, -1);
+        }
+    }
+
+    static Map<String, Integer> numeralDigits() {
+        var numeral_digits = Arrays.stream(Digit.values()).collect(Collectors.toMap(d -> String.valueOf(d.digit), d -> d.digit));
+        // no word for zero, but \d matches it
+        numeral_digits.put("0", 0);
+        return numeral_digits;
+    }
+
+    static Map<String, Integer> wordDigits() {
+        var word_digits = new HashMap<>(numeralDigits());
+        Arrays.stream(Digit.values()).forEach(d -> word_digits.put(d.name().toLowerCase(Locale.ROOT), d.digit));
+        return word_digits;
+    }
+
+    static final Map<Pattern, DigitScanner> PATTERN_SCANNERS = Map.of(
+            DIGIT_SINGLE, new DigitScanner(numeralDigits()),
+            DIGIT_WORD, new DigitScanner(wordDigits())
+    );
+
+    static DigitScanner scanner(Pattern digit) {
+        var scanner = PATTERN_SCANNERS.get(digit);
+        if(scanner == null) throw new IllegalArgumentException("No scanner for " + digit);
+        return scanner;
+    }
+
     static int calibrate(String str, Pattern digit){
+        var data = str.getBytes(StandardCharsets.US_ASCII);
+        return scanner(digit).calibrate(data, 0, data.length);
+    }
+
+    // matches the pattern at every suffix, kept as a reference for the scanner
+    static int calibrateRegex(String str, Pattern digit){
         Matcher mLead = digit.matcher(str);
         if(!mLead.find()) throw new IllegalArgumentException("Missing lead in " + str);
 
@@ -47,14 +171,141 @@ public class Day01 {
         throw new IllegalArgumentException("Missing tail in " + str);
     }
 
+    // one pass over the bytes, each line scanned from the front and the back
+    static long calibrateSum(byte[] data, DigitScanner scanner) {
+        long sum = 0;
+        int lineStart = 0;
+        for(int i = 0; i <= data.length; ++i) {
+            if(i == data.length || data[i] == '\n') {
+                if(i > lineStart) sum += scanner.calibrate(data, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        return sum;
+    }
+
+    // reads through a reused buffer, the partial last line of each read is carried to the front for the next,
+    // so inputs past the 2 GB byte[] limit are handled in bounded memory
+    static long calibrateSum(InputStream in, DigitScanner scanner) throws IOException {
+        var buffer = new byte[1 << 16];
+        int filled = 0;
+        long sum = 0;
+        for(int read = in.read(buffer, filled, buffer.length - filled); read >= 0 || filled > 0; read = in.read(buffer, filled, buffer.length - filled)) {
+            if(read < 0) {
+                // unterminated last line
+                sum += scanner.calibrate(buffer, 0, filled);
+                break;
+            }
+            filled += read;
+
+            int lineStart = 0;
+            for(int i = filled - read; i < filled; ++i) {
+                if(buffer[i] == '\n') {
+                    if(i > lineStart) sum += scanner.calibrate(buffer, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+            filled -= lineStart;
+            // a line longer than the buffer
+            if(filled == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        return sum;
+    }
+
+    // VectorScanner must not be loaded unless the incubator module was resolved at startup
+    static boolean vectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    // numerals only, the buffer is compared a full vector of bytes at a time for digits and line ends, needs --add-modules jdk.incubator.vector
+    static class VectorScanner {
+        // lane masks are read back as a long, so wider hardware is limited to 64 lanes
+        static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() > Long.SIZE ? ByteVector.SPECIES_512 : ByteVector.SPECIES_PREFERRED;
+
+        // lead and tail digit of the line in progress, -1 before the first digit
+        int lead = -1;
+        int tail = -1;
+        long sum = 0;
+        int lineStart = 0;
+
+        // checkRegex recomputes every line through calibrateRegex and fails on any difference
+        static long calibrateSum(byte[] data, boolean checkRegex) {
+            var scanner = new VectorScanner();
+            int lanes = SPECIES.length();
+            int bound = SPECIES.loopBound(data.length);
+            int i = 0;
+            for(; i < bound; i += lanes) {
+                var bytes = ByteVector.fromArray(SPECIES, data, i);
+                long digits = bytes.compare(VectorOperators.GE, (byte)'0')
+                        .and(bytes.compare(VectorOperators.LE, (byte)'9'))
+                        .toLong();
+                long lineEnds = bytes.compare(VectorOperators.EQ, (byte)'\n').toLong();
+
+                while(lineEnds != 0) {
+                    int end = Long.numberOfTrailingZeros(lineEnds);
+                    // digits in this block up to the line end
+                    scanner.digits(data, i, digits & ((1L << end) - 1));
+                    scanner.endLine(data, i + end, checkRegex);
+                    digits &= -(1L << end) << 1;
+                    lineEnds &= lineEnds - 1;
+                }
+                scanner.digits(data, i, digits);
+            }
+
+            // remainder shorter than a vector goes through the scalar path
+            for(; i < data.length; ++i) {
+                byte chr = data[i];
+                if(chr == '\n') scanner.endLine(data, i, checkRegex);
+                else if('0' <= chr && chr <= '9') {
+                    if(scanner.lead < 0) scanner.lead = chr - '0';
+                    scanner.tail = chr - '0';
+                }
+            }
+            if(scanner.lineStart < data.length) scanner.endLine(data, data.length, checkRegex);
+            return scanner.sum;
+        }
+
+        void digits(byte[] data, int offset, long digits) {
+            if(digits == 0) return;
+            if(lead < 0) lead = data[offset + Long.numberOfTrailingZeros(digits)] - '0';
+            tail = data[offset + 63 - Long.numberOfLeadingZeros(digits)] - '0';
+        }
+
+        void endLine(byte[] data, int end, boolean checkRegex) {
+            if(end > lineStart) {
+                // the line is only materialized for the regex check or an error
+                if(lead < 0) throw new IllegalArgumentException("Missing lead in " + new String(data, lineStart, end - lineStart, StandardCharsets.US_ASCII));
+                int calibration = lead * 10 + tail;
+                if(checkRegex) {
+                    var line = new String(data, lineStart, end - lineStart, StandardCharsets.US_ASCII);
+                    if(calibration != calibrateRegex(line, DIGIT_SINGLE)) {
+                        throw new IllegalStateException("Vector calibration " + calibration + " differs from regex for " + line);
+                    }
+                }
+                sum += calibration;
+            }
+            lead = tail = -1;
+            lineStart = end + 1;
+        }
+    }
+
     private static void calibrateSum(String resource, Pattern digit) throws IOException {
+        long sum;
+        try (var in = Resources.getResource(resource).openStream()) {
+            sum = calibrateSum(in, scanner(digit));
+        }
+        log.info("calibration sum " + sum);
+    }
+
+    private static void calibrateSumRegex(String resource, Pattern digit) throws IOException {
         String[] lines = Resources.toString(Resources.getResource(resource), Charset.defaultCharset()).split("\n");
         int sum = 0;
         for(String line : lines){
-            int calibrate = calibrate(line, digit);
+            int calibrate = calibrateRegex(line, digit);
             sum += calibrate;
         }
-        log.info("calibration sum " + sum);
+        log.info("regex calibration sum " + sum);
     }
 
 
@@ -64,6 +315,15 @@ public class Day01 {
             //calibrateSum("2023/01/puzzle", DIGIT_SINGLE); // 55123
             //calibrateSum("2023/01/sample2", DIGIT_WORD); //281
             calibrateSum("2023/01/puzzle", DIGIT_WORD); //55260
+            calibrateSumRegex("2023/01/puzzle", DIGIT_WORD); //55260
+            for(String line : new String[]{"8nng0", "w0uhe7it3", "0", "zero0one"}) {
+                for(Pattern digit : new Pattern[]{DIGIT_SINGLE, DIGIT_WORD}) {
+                    if(calibrate(line, digit) != calibrateRegex(line, digit)) throw new IllegalStateException("Scanner differs from regex for " + line);
+                }
+            }
+            var puzzle = Resources.toByteArray(Resources.getResource("2023/01/puzzle"));
+            if(vectorAvailable()) log.info("vector calibration sum " + VectorScanner.calibrateSum(puzzle, true)); //55123
+            else log.info("scalar calibration sum " + calibrateSum(puzzle, scanner(DIGIT_SINGLE)) + ", run with --add-modules jdk.incubator.vector for the vector scanner"); //55123
         }
         catch(Exception e){
             log.log(Level.SEVERE, "main", e);
@@ -64,7 +64,6 @@ public class Day02 {
             }
             games.add(game);
         }
-        log.info(games.toString());
         return games;
     }
 
@@ -83,17 +82,16 @@ public class Day02 {
         return true;
     }
 
-    static void sumPossibleGameId(String resource) throws IOException {
+    static int sumPossibleGameId(Set<Game> games) {
         Handful bag = Handful.builder().color_counts(ImmutableMap.of(Color.RED, 12, Color.GREEN, 13, Color.BLUE, 14)).build();
 
-        Set<Game> games = parse(resource);
         int sumId = 0;
         for(Game game : games){
             if(handfulPossible(bag, game.handfuls())){
                 sumId += game.id();
             }
         }
-        log.info("sum of ids " + sumId);
+        return sumId;
     }
 
     static int minimumGamePower(Game game){
@@ -117,21 +115,189 @@ public class Day02 {
         return power;
     }
 
-    static void sumMinimumGamePower(String resource) throws IOException {
-        Set<Game> games = parse(resource);
+    static int sumMinimumGamePower(Set<Game> games) {
         int sumPower = 0;
         for(Game game : games){
             sumPower += minimumGamePower(game);
         }
-        log.info("power sum " + sumPower);
+        return sumPower;
+    }
+
+    // per game maximum count of each color, one primitive column per color indexed alongside the game ids
+    @Data
+    @Accessors(fluent = true)
+    @RequiredArgsConstructor(staticName = "of")
+    static class GameColumns {
+        final int[] ids;
+        final int[][] colorMaxes;
+
+        int size() {
+            return ids.length;
+        }
+
+        long sumPossibleIds(int red, int green, int blue) {
+            var reds = colorMaxes[Color.RED.ordinal()];
+            var greens = colorMaxes[Color.GREEN.ordinal()];
+            var blues = colorMaxes[Color.BLUE.ordinal()];
+            long sumId = 0;
+            for(int game = 0; game < ids.length; ++game) {
+                if(reds[game] <= red && greens[game] <= green && blues[game] <= blue) sumId += ids[game];
+            }
+            return sumId;
+        }
+
+        // colors never drawn count as 0, unlike minimumGamePower which leaves them out of the product
+        long sumMinimumPower() {
+            var reds = colorMaxes[Color.RED.ordinal()];
+            var greens = colorMaxes[Color.GREEN.ordinal()];
+            var blues = colorMaxes[Color.BLUE.ordinal()];
+            long sumPower = 0;
+            for(int game = 0; game < ids.length; ++game) {
+                sumPower += (long)reds[game] * greens[game] * blues[game];
+            }
+            return sumPower;
+        }
+    }
+
+    // prefix sums of game ids over the per-color maxima, each color axis compressed to the distinct maxima seen,
+    // so the ids of every game a bag can hold are one cell of the cube
+    @Data
+    @Accessors(fluent = true)
+    @RequiredArgsConstructor(staticName = "of")
+    static class BagIndex {
+        static final int MAX_CELLS = 1 << 26;
+
+        // sorted distinct maxima per color
+        final int[][] axes;
+        // flattened [red][green][blue], index 0 on each axis holds no games
+        final long[] sums;
+
+        static BagIndex of(GameColumns games) {
+            int colors = Color.values().length;
+            var axes = new int[colors][];
+            var dims = new int[colors];
+            long cells = 1;
+            for(int c = 0; c < colors; ++c) {
+                axes[c] = Arrays.stream(games.colorMaxes()[c]).sorted().distinct().toArray();
+                dims[c] = axes[c].length + 1;
+                cells *= dims[c];
+            }
+            if(cells > MAX_CELLS) throw new IllegalArgumentException("Bag index needs " + cells + " cells");
+
+            var sums = new long[(int)cells];
+            for(int game = 0; game < games.size(); ++game) {
+                int cell = 0;
+                for(int c = 0; c < colors; ++c) {
+                    cell = cell * dims[c] + Arrays.binarySearch(axes[c], games.colorMaxes()[c][game]) + 1;
+                }
+                sums[cell] += games.ids()[game];
+            }
+
+            // accumulate along each axis in turn
+            int stride = 1;
+            for(int c = colors - 1; c >= 0; --c) {
+                int span = stride * dims[c];
+                for(int cell = 0; cell < sums.length; ++cell) {
+                    if(cell % span >= stride) sums[cell] += sums[cell - stride];
+                }
+                stride = span;
+            }
+            return BagIndex.of(axes, sums);
+        }
+
+        // number of distinct maxima on the axis that fit in the bag count
+        static int fitting(int[] axis, int count) {
+            int i = Arrays.binarySearch(axis, count);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+
+        long sumPossibleIds(int red, int green, int blue) {
+            int greens = axes[Color.GREEN.ordinal()].length + 1;
+            int blues = axes[Color.BLUE.ordinal()].length + 1;
+            return sums[(fitting(axes[Color.RED.ordinal()], red) * greens
+                    + fitting(axes[Color.GREEN.ordinal()], green)) * blues
+                    + fitting(axes[Color.BLUE.ordinal()], blue)];
+        }
+
+        // bags as {red, green, blue}
+        long[] sumPossibleIds(int[][] bags) {
+            var sumIds = new long[bags.length];
+            for(int i = 0; i < bags.length; ++i) sumIds[i] = sumPossibleIds(bags[i][0], bags[i][1], bags[i][2]);
+            return sumIds;
+        }
+    }
+
+    static Color colorOf(byte initial) {
+        return switch (initial) {
+            case 'r' -> Color.RED;
+            case 'g' -> Color.GREEN;
+            case 'b' -> Color.BLUE;
+            default -> throw new IllegalArgumentException("Unrecognized color initial " + (char)initial);
+        };
+    }
+
+    // single pass over the bytes, "Game <id>: <count> <color>, ...; ..." per line, keeping only each color's maximum
+    static GameColumns parseColumns(String resource) throws IOException {
+        byte[] data = Resources.toByteArray(Resources.getResource(resource));
+        int capacity = 256;
+        var ids = new int[capacity];
+        var colorMaxes = new int[Color.values().length][capacity];
+        int size = 0;
+
+        int at = 0;
+        while(at < data.length) {
+            // skip to the id
+            while(at < data.length && (data[at] < '0' || data[at] > '9')) ++at;
+            if(at == data.length) break;
+
+            if(size == capacity) {
+                capacity *= 2;
+                ids = Arrays.copyOf(ids, capacity);
+                for(int c = 0; c < colorMaxes.length; ++c) colorMaxes[c] = Arrays.copyOf(colorMaxes[c], capacity);
+            }
+
+            int id = 0;
+            while(data[at] != ':') id = id * 10 + (data[at++] - '0');
+            ids[size] = id;
+
+            int count = -1;
+            for(++at; at < data.length && data[at] != '\n'; ++at) {
+                byte chr = data[at];
+                if('0' <= chr && chr <= '9') {
+                    count = (count < 0 ? 0 : count * 10) + (chr - '0');
+                }
+                else if(count >= 0 && chr != ' ') {
+                    var maxes = colorMaxes[colorOf(chr).ordinal()];
+                    maxes[size] = Math.max(maxes[size], count);
+                    count = -1;
+                    // rest of the color name
+                    while(at + 1 < data.length && 'a' <= data[at + 1] && data[at + 1] <= 'z') ++at;
+                }
+            }
+            ++size;
+        }
+
+        for(int c = 0; c < colorMaxes.length; ++c) colorMaxes[c] = Arrays.copyOf(colorMaxes[c], size);
+        return GameColumns.of(Arrays.copyOf(ids, size), colorMaxes);
+    }
+
+    // both answers from one parse, alongside the regex parse kept as a reference
+    static void evaluate(String resource) throws IOException {
+        var games = parseColumns(resource);
+        log.info("%s sum of ids %d".formatted(resource, games.sumPossibleIds(12, 13, 14)));
+        log.info("%s power sum %d".formatted(resource, games.sumMinimumPower()));
+
+        var referenceGames = parse(resource);
+        log.info("%s reference sum of ids %d, power sum %d".formatted(resource, sumPossibleGameId(referenceGames), sumMinimumGamePower(referenceGames)));
+
+        var bagIndex = BagIndex.of(games);
+        log.info("%s indexed sum of ids %s".formatted(resource, Arrays.toString(bagIndex.sumPossibleIds(new int[][]{{12, 13, 14}, {20, 20, 20}, {0, 0, 0}}))));
     }
 
     public static void main(String[] args) {
         try {
-            sumPossibleGameId("2023/02/sample"); //8
-            sumPossibleGameId("2023/02/puzzle"); //2771
-            sumMinimumGamePower("2023/02/sample"); //2286
-            sumMinimumGamePower("2023/02/puzzle"); //70924
+            evaluate("2023/02/sample"); //8, 2286
+            evaluate("2023/02/puzzle"); //2771, 70924
         }
         catch(Exception e){
             log.log(Level.SEVERE, "main", e);
@@ -7,10 +7,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
 import lombok.extern.java.Log;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -57,6 +65,302 @@ public class Day03 {
         Set<Symbol> symbols;
     }
 
+    // cell -> number id over the whole grid, with each row's symbol and gear columns as bitsets
+    @Data
+    @Accessors(fluent = true)
+    @RequiredArgsConstructor(staticName = "of")
+    static class GridIndex {
+        final int width;
+        final int height;
+        // per number id, its value and the cells it spans in the source
+        final long[] values;
+        final int[] starts;
+        final int[] lengths;
+        // row * width + column, -1 where no number sits
+        final int[] cellNumbers;
+        final long[][] rowSymbols;
+        final long[][] rowGears;
+
+        // one pass over the bytes, rows must share the width of the first
+        static GridIndex of(byte[] data) {
+            int width = 0;
+            while(width < data.length && data[width] != '\n' && data[width] != '\r') ++width;
+            // exact for \n line ends, an overestimate trimmed below for \r\n
+            int maxHeight = width == 0 ? 0 : data.length / (width + 1) + 1;
+            int words = (width + Long.SIZE - 1) / Long.SIZE;
+
+            var cellNumbers = new int[width * maxHeight];
+            Arrays.fill(cellNumbers, -1);
+            var rowSymbols = new long[maxHeight][words];
+            var rowGears = new long[maxHeight][words];
+            var values = new long[64];
+            var starts = new int[64];
+            var lengths = new int[64];
+            int count = 0;
+            int row = 0;
+            int column = 0;
+            try {
+                for(int i = 0; i <= data.length; ++i) {
+                    byte chr = i < data.length ? data[i] : (byte)'\n';
+                    if(chr == '\r') continue;
+                    if(chr == '\n') {
+                        if(column == 0) continue;
+                        if(column != width) throw new IllegalArgumentException("Row " + row + " is " + column + " wide, expected " + width);
+                        ++row;
+                        column = 0;
+                        continue;
+                    }
+                    if(column == width) throw new IllegalArgumentException("Row " + row + " is wider than " + width);
+
+                    if('0' <= chr && chr <= '9') {
+                        int cell = row * width + column;
+                        if(column == 0 || cellNumbers[cell - 1] < 0) {
+                            if(count == values.length) {
+                                values = Arrays.copyOf(values, count * 2);
+                                starts = Arrays.copyOf(starts, count * 2);
+                                lengths = Arrays.copyOf(lengths, count * 2);
+                            }
+                            starts[count++] = cell;
+                        }
+                        int id = count - 1;
+                        values[id] = Math.addExact(Math.multiplyExact(values[id], 10L), chr - '0');
+                        ++lengths[id];
+                        cellNumbers[cell] = id;
+                    }
+                    else if(chr != '.') {
+                        rowSymbols[row][column >>> 6] |= 1L << column;
+                        if(chr == '*') rowGears[row][column >>> 6] |= 1L << column;
+                    }
+                    ++column;
+                }
+            }
+            catch(ArithmeticException e) {
+                throw new IllegalArgumentException("Part number exceeds long range at row " + row, e);
+            }
+
+            int height = row;
+            return GridIndex.of(width, height,
+                    Arrays.copyOf(values, count), Arrays.copyOf(starts, count), Arrays.copyOf(lengths, count),
+                    height == maxHeight ? cellNumbers : Arrays.copyOf(cellNumbers, width * height),
+                    Arrays.copyOf(rowSymbols, height), Arrays.copyOf(rowGears, height));
+        }
+
+        static boolean anySet(long[] bits, int fromColumn, int toColumn) {
+            for(int column = fromColumn; column <= toColumn; ++column) {
+                if((bits[column >>> 6] & (1L << column)) != 0) return true;
+            }
+            return false;
+        }
+
+        boolean isPartNumber(int id) {
+            int numberRow = starts[id] / width;
+            int column = starts[id] % width;
+            int from = Math.max(0, column - 1);
+            int to = Math.min(width - 1, column + lengths[id]);
+            for(int row = Math.max(0, numberRow - 1); row <= Math.min(height - 1, numberRow + 1); ++row) {
+                if(anySet(rowSymbols[row], from, to)) return true;
+            }
+            return false;
+        }
+
+        long sumPartNumbers() {
+            long sum = 0;
+            for(int id = 0; id < values.length; ++id) {
+                if(isPartNumber(id)) sum = Math.addExact(sum, values[id]);
+            }
+            return sum;
+        }
+
+        // gears found row by row from the bitsets, neighbours read straight from the cells
+        long sumGearRatio() {
+            long sum = 0;
+            var adjacent = new int[8];
+            for(int row = 0; row < height; ++row) {
+                long[] gears = rowGears[row];
+                for(int word = 0; word < gears.length; ++word) {
+                    for(long bits = gears[word]; bits != 0; bits &= bits - 1) {
+                        int column = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                        int found = 0;
+                        for(int y = Math.max(0, row - 1); y <= Math.min(height - 1, row + 1); ++y) {
+                            for(int x = Math.max(0, column - 1); x <= Math.min(width - 1, column + 1); ++x) {
+                                int id = cellNumbers[y * width + x];
+                                if(id < 0) continue;
+                                boolean seen = false;
+                                for(int i = 0; i < found && !seen; ++i) seen = adjacent[i] == id;
+                                if(!seen) adjacent[found++] = id;
+                            }
+                        }
+                        if(found == 2) sum = Math.addExact(sum, Math.multiplyExact(values[adjacent[0]], values[adjacent[1]]));
+                    }
+                }
+            }
+            return sum;
+        }
+    }
+
+    // rows pushed in order, each settled once the row below it arrives, so only three rows are ever held
+    @Data
+    @Accessors(fluent = true)
+    static class RowWindow {
+        long partSum = 0;
+        long gearSum = 0;
+        byte[] previous;
+        byte[] current;
+
+        static boolean isDigit(byte[] row, int column) {
+            return row != null && 0 <= column && column < row.length && '0' <= row[column] && row[column] <= '9';
+        }
+
+        static boolean isSymbol(byte chr) {
+            return chr != '.' && (chr < '0' || chr > '9');
+        }
+
+        static boolean symbolWithin(byte[] row, int from, int to) {
+            if(row == null) return false;
+            for(int column = Math.max(0, from); column <= Math.min(row.length - 1, to); ++column) {
+                if(isSymbol(row[column])) return true;
+            }
+            return false;
+        }
+
+        // value of the number covering the column, rejected when it does not fit in a long
+        static long numberAt(byte[] row, int column) {
+            int start = column;
+            while(isDigit(row, start - 1)) --start;
+            long value = 0;
+            for(int at = start; isDigit(row, at); ++at) value = digitAppended(value, row[at]);
+            return value;
+        }
+
+        static long digitAppended(long value, byte digit) {
+            try {
+                return Math.addExact(Math.multiplyExact(value, 10L), digit - '0');
+            }
+            catch(ArithmeticException e) {
+                throw new IllegalArgumentException("Part number exceeds long range", e);
+            }
+        }
+
+        void push(byte[] row) {
+            if(current != null) settle(previous, current, row);
+            previous = current;
+            current = row;
+        }
+
+        void finish() {
+            if(current != null) settle(previous, current, null);
+            previous = current = null;
+        }
+
+        // counts the numbers and gears sitting in the row, the rows either side are only read
+        void settle(byte[] above, byte[] row, byte[] below) {
+            for(int column = 0; column < row.length; ++column) {
+                if(isDigit(row, column)) {
+                    int start = column;
+                    long value = 0;
+                    for(; isDigit(row, column); ++column) value = digitAppended(value, row[column]);
+                    if(symbolWithin(above, start - 1, column)
+                            || symbolWithin(row, start - 1, column)
+                            || symbolWithin(below, start - 1, column)) partSum = Math.addExact(partSum, value);
+                    --column;
+                }
+                else if(row[column] == '*') {
+                    gearSum = Math.addExact(gearSum, gearRatio(column, above, row, below));
+                }
+            }
+        }
+
+        // the numbers touching the gear are located first, so only a pair is ever multiplied
+        private static long gearRatio(int column, byte[]... rows) {
+            int found = 0;
+            byte[] firstRow = null;
+            int firstColumn = 0;
+            byte[] secondRow = null;
+            int secondColumn = 0;
+            for(byte[] row : rows) {
+                if(row == null) continue;
+                for(int at = column - 1; at <= column + 1; ++at) {
+                    // each number is seen once, at its leftmost cell within the three columns
+                    if(!isDigit(row, at) || (at > column - 1 && isDigit(row, at - 1))) continue;
+                    if(++found > 2) return 0;
+                    if(found == 1) {
+                        firstRow = row;
+                        firstColumn = at;
+                    }
+                    else {
+                        secondRow = row;
+                        secondColumn = at;
+                    }
+                }
+            }
+            return found == 2 ? Math.multiplyExact(numberAt(firstRow, firstColumn), numberAt(secondRow, secondColumn)) : 0;
+        }
+    }
+
+    static RowWindow stream(InputStream in) throws IOException {
+        var window = new RowWindow();
+        var line = new ByteArrayOutputStream();
+        try (var buffered = new BufferedInputStream(in)) {
+            for(int chr = buffered.read(); chr >= 0; chr = buffered.read()) {
+                if(chr == '\n') {
+                    window.push(line.toByteArray());
+                    line.reset();
+                }
+                else if(chr != '\r') line.write(chr);
+            }
+        }
+        if(line.size() > 0) window.push(line.toByteArray());
+        window.finish();
+        return window;
+    }
+
+    // a band of rows settled on a fork/join worker, with the row on either side of the band read as a halo,
+    // every row is settled by exactly one band so boundary numbers and gears are counted once
+    @RequiredArgsConstructor
+    static class BandTask extends RecursiveTask<RowWindow> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        static final int BAND_ROWS = 512;
+
+        final byte[][] rows;
+        final int from;
+        final int to;
+
+        @Override
+        protected RowWindow compute() {
+            if(to - from <= BAND_ROWS) {
+                var window = new RowWindow();
+                for(int row = from; row < to; ++row) {
+                    window.settle(
+                            row > 0 ? rows[row - 1] : null,
+                            rows[row],
+                            row + 1 < rows.length ? rows[row + 1] : null
+                    );
+                }
+                return window;
+            }
+
+            int middle = (from + to) >>> 1;
+            var upper = new BandTask(rows, from, middle);
+            upper.fork();
+            var window = new BandTask(rows, middle, to).compute();
+            var upperWindow = upper.join();
+            window.partSum = Math.addExact(window.partSum, upperWindow.partSum);
+            window.gearSum = Math.addExact(window.gearSum, upperWindow.gearSum);
+            return window;
+        }
+    }
+
+    static RowWindow banded(byte[][] rows) {
+        return ForkJoinPool.commonPool().invoke(new BandTask(rows, 0, rows.length));
+    }
+
+    static byte[][] readRows(String resource) throws IOException {
+        return Resources.readLines(Resources.getResource(resource), StandardCharsets.US_ASCII).stream()
+                .map(line -> line.getBytes(StandardCharsets.US_ASCII))
+                .toArray(byte[][]::new);
+    }
+
     static Schematic parse(String resource) throws IOException {
         Schematic.SchematicBuilder schematic = Schematic.builder().numbers(new HashSet<>()).symbols(new HashSet<>());
         String[] lines = Resources.toString(Resources.getResource(resource), Charset.defaultCharset()).split("\n");
@@ -145,6 +449,18 @@ public class Day03 {
             log.info("part1 puzzle " + sumPartNumbers(puzzle)); // 509115
             log.info("part2 sample " + sumGearRatio(sample)); // 467835
             log.info("part2 puzzle " + sumGearRatio(puzzle)); // 75220503
+
+            var puzzleIndex = GridIndex.of(Resources.toByteArray(Resources.getResource("2023/03/puzzle")));
+            log.info("part1 puzzle indexed " + puzzleIndex.sumPartNumbers()); // 509115
+            log.info("part2 puzzle indexed " + puzzleIndex.sumGearRatio()); // 75220503
+
+            var puzzleWindow = stream(Resources.getResource("2023/03/puzzle").openStream());
+            log.info("part1 puzzle streamed " + puzzleWindow.partSum()); // 509115
+            log.info("part2 puzzle streamed " + puzzleWindow.gearSum()); // 75220503
+
+            var puzzleBanded = banded(readRows("2023/03/puzzle"));
+            log.info("part1 puzzle banded " + puzzleBanded.partSum()); // 509115
+            log.info("part2 puzzle banded " + puzzleBanded.gearSum()); // 75220503
         }
         catch(Exception e){
             log.log(Level.SEVERE, "main", e);
@@ -11,37 +11,54 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Log
 public class Day04 {
 
     static final Pattern CARD_REGEX = Pattern.compile("Card +(\\d+): +((?: *\\d+)+) \\| +((?: *\\d+)+)");
 
+    // numbers are held as bits over two words, 0-63 in the low word and 64-127 in the high word
+    static final int MAX_NUMBER = 127;
+
     @Data
     @RequiredArgsConstructor(staticName = "of")
     @Accessors(fluent = true)
     static class Card {
         final int id;
-        final Set<Integer> winners;
-        final Set<Integer> candidates;
+        final long winnersLow;
+        final long winnersHigh;
+        final long candidatesLow;
+        final long candidatesHigh;
 
         long matches(){
-            return candidates.stream().filter(winners::contains).count();
+            return matches(winnersLow, winnersHigh, candidatesLow, candidatesHigh);
         }
 
         long points() {
-            var matches = matches();
-            return matches == 0L ? 0L : (long)Math.pow(2, matches-1);
+            return points(matches());
+        }
+
+        static int matches(long winnersLow, long winnersHigh, long candidatesLow, long candidatesHigh){
+            return Long.bitCount(winnersLow & candidatesLow) + Long.bitCount(winnersHigh & candidatesHigh);
+        }
+
+        static long points(long matches){
+            // doubling past 1 << 62 leaves the long range, which the bitsets allow up to MAX_NUMBER + 1 matches
+            if(matches > Long.SIZE - 1) throw new IllegalArgumentException("Points for " + matches + " matches exceed long range");
+            return matches == 0L ? 0L : 1L << (matches - 1);
         }
     }
 
-    static Set<Integer> parseInts(String str) {
-        return Arrays.stream(str.split(" +")).map(Integer::parseInt).collect(Collectors.toSet());
+    static long[] parseBits(String str) {
+        var bits = new long[2];
+        Arrays.stream(str.split(" +")).mapToInt(Integer::parseInt).forEach(number -> {
+            if(number < 0 || number > MAX_NUMBER) throw new IllegalArgumentException("Unsupported card number " + number);
+            bits[number >>> 6] |= 1L << number;
+        });
+        return bits;
     }
 
     static List<Card> parseData(String resource) throws IOException {
@@ -50,39 +67,105 @@ public class Day04 {
 
         Matcher m = CARD_REGEX.matcher(data);
         while(m.find()){
+            var winners = parseBits(m.group(2));
+            var candidates = parseBits(m.group(3));
             cards.add(Card.of(
                     Integer.parseInt(m.group(1)),
-                    parseInts(m.group(2)),
-                    parseInts(m.group(3))
+                    winners[0], winners[1],
+                    candidates[0], candidates[1]
             ));
         }
 
         return cards;
     }
 
+    // a deck packs DECK_STRIDE words per card: winners low, winners high, candidates low, candidates high
+    static final int DECK_STRIDE = 4;
+
+    // parses the bytes straight into deck words, cards are taken in file order
+    static long[] parseDeck(String resource) throws IOException {
+        byte[] data = Resources.toByteArray(Resources.getResource(resource));
+        var deck = new long[DECK_STRIDE * 256];
+        int size = 0;
+        int at = 0;
+        while(at < data.length){
+            // skip the card label
+            while(at < data.length && data[at] != ':') ++at;
+            if(at == data.length) break;
+
+            if(deck.length < (size + 1) * DECK_STRIDE) deck = Arrays.copyOf(deck, deck.length * 2);
+            int word = size * DECK_STRIDE;
+            int number = -1;
+            for(++at; at < data.length && data[at] != '\n'; ++at){
+                byte chr = data[at];
+                if('0' <= chr && chr <= '9'){
+                    number = (number < 0 ? 0 : number * 10) + (chr - '0');
+                    if(number > MAX_NUMBER) throw new IllegalArgumentException("Unsupported card number at byte " + at);
+                    continue;
+                }
+                if(number >= 0){
+                    deck[word + (number >>> 6)] |= 1L << number;
+                    number = -1;
+                }
+                if(chr == '|') word += 2;
+            }
+            if(number >= 0) deck[word + (number >>> 6)] |= 1L << number;
+            ++size;
+        }
+        return Arrays.copyOf(deck, size * DECK_STRIDE);
+    }
+
+    static int[] matches(long[] deck) {
+        var matches = new int[deck.length / DECK_STRIDE];
+        for(int i = 0, word = 0; i < matches.length; ++i, word += DECK_STRIDE){
+            matches[i] = Card.matches(deck[word], deck[word + 1], deck[word + 2], deck[word + 3]);
+        }
+        return matches;
+    }
+
+    static long sumPoints(long[] deck) {
+        long sum = 0;
+        for(int matches : matches(deck)) sum = Math.addExact(sum, Card.points(matches));
+        return sum;
+    }
+
+    static long countCards(long[] deck) {
+        return countCards(matches(deck));
+    }
+
     static long sumPoints(List<Card> cards) {
         return cards.stream().map(Card::points)
-                .reduce(Long::sum).orElse(0L);
+                .reduce(Math::addExact).orElse(0L);
     }
 
+    // copies won are tracked per card index in a difference array, so the cost follows cards and matches rather than copies
     static long countCards(List<Card> cards) {
+        return countCards(cards.stream().mapToInt(card -> (int)card.matches()).toArray());
+    }
+
+    static long countCards(int[] cardMatches) {
+        int size = cardMatches.length;
+        // change in the number of extra copies held, starting at each card index
+        var copiesDelta = new long[size + 1];
+        long extraCopies = 0;
         var count = 0L;
-        // number of extra cards that are outstanding
-        List<Long> dupesDue = new ArrayList<>();
-        for(Card card : cards){
-            var copies = 1 + dupesDue.size();
-            count += copies;
-
-            dupesDue = dupesDue.stream()
-                    .map(i -> i -= 1)
-                    .filter(i -> i > 0)
-                    .collect(Collectors.toList());
-
-            var matches = card.matches();
-            if(matches > 0) {
-                for (long i = 0; i < copies; ++i) dupesDue.add(matches);
+        try {
+            for(int i = 0; i < size; ++i){
+                extraCopies = Math.addExact(extraCopies, copiesDelta[i]);
+                var copies = Math.addExact(1L, extraCopies);
+                count = Math.addExact(count, copies);
+
+                // wins past the end of the deck are lost
+                var matches = Math.min(cardMatches[i], size - 1 - i);
+                if(matches > 0) {
+                    copiesDelta[i + 1] = Math.addExact(copiesDelta[i + 1], copies);
+                    copiesDelta[i + 1 + matches] = Math.subtractExact(copiesDelta[i + 1 + matches], copies);
+                }
             }
         }
+        catch(ArithmeticException e){
+            throw new IllegalArgumentException("Card count exceeds long range", e);
+        }
         return count;
     }
 
@@ -96,6 +179,10 @@ public class Day04 {
             var puzzleCards = parseData("2023/04/puzzle");
             log.info("puzzle points " + sumPoints(puzzleCards)); //32001
             log.info("puzzle count " + countCards(puzzleCards)); //5037841
+
+            var puzzleDeck = parseDeck("2023/04/puzzle");
+            log.info("puzzle deck points " + sumPoints(puzzleDeck)); //32001
+            log.info("puzzle deck count " + countCards(puzzleDeck)); //5037841
         }
         catch(Exception e){
             log.log(Level.SEVERE, "main", e);
@@ -3,16 +3,26 @@ package net.necne.adventofcode.year2023;
 import com.google.common.io.Resources;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import lombok.ToString;
 import lombok.experimental.Accessors;
 import lombok.extern.java.Log;
 import util.Timer;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 
 @Log
@@ -22,23 +32,97 @@ public class Day05 {
     @RequiredArgsConstructor
     static class Almanac {
         List<Long> seeds;
-        Convert seed_soil;
-        Convert soil_fertilizer;
-        Convert fertilizer_water;
-        Convert water_light;
-        Convert light_temperature;
-        Convert temperature_humidity;
-        Convert humidity_location;
+        // category graph, from category -> to category -> convert
+        Map<String, Map<String, Convert>> category_converts = new HashMap<>();
+        // composed maps keyed by "from -> to", each built on the cached map one step shorter
+        @ToString.Exclude
+        final Map<String, PiecewiseMap> path_maps = new HashMap<>();
 
         Convert[] seedLocationPath;
+        PiecewiseMap seedLocationMap;
+        InverseMap locationSeedMap;
 
         final static String SEP = " -> ";
 
         public void init(){
-            seedLocationPath = new Convert[]{seed_soil, soil_fertilizer, fertilizer_water, water_light, light_temperature, temperature_humidity, humidity_location};
+            seedLocationPath = converts(path("seed", "location"));
+            seedLocationMap = mapping("seed", "location");
+            locationSeedMap = InverseMap.of(seedLocationMap);
+        }
+
+        void addConvert(String from, String to, Convert convert){
+            category_converts.computeIfAbsent(from, k -> new HashMap<>()).put(to, convert);
+            synchronized (path_maps) {
+                path_maps.clear();
+            }
+        }
+
+        // shortest chain of categories from one to the other, both ends included
+        List<String> path(String from, String to){
+            Map<String, String> category_previous = new HashMap<>();
+            category_previous.put(from, null);
+            var queue = new ArrayDeque<String>();
+            queue.add(from);
+            while(!queue.isEmpty()){
+                var category = queue.poll();
+                if(category.equals(to)){
+                    var path = new ArrayList<String>();
+                    for(String at = to; at != null; at = category_previous.get(at)) path.add(0, at);
+                    return path;
+                }
+                for(String next : category_converts.getOrDefault(category, Map.of()).keySet()){
+                    if(!category_previous.containsKey(next)){
+                        category_previous.put(next, category);
+                        queue.add(next);
+                    }
+                }
+            }
+            throw new IllegalArgumentException("No conversion path" + SEP + from + SEP + to);
+        }
+
+        Convert[] converts(List<String> path){
+            var converts = new Convert[path.size() - 1];
+            for(int i = 1; i < path.size(); ++i){
+                converts[i - 1] = category_converts.get(path.get(i - 1)).get(path.get(i));
+            }
+            return converts;
+        }
+
+        PiecewiseMap mapping(String from, String to){
+            var path = path(from, to);
+            synchronized (path_maps) {
+                // reuse the longest prefix of the path that is already composed
+                int composed = path.size() - 1;
+                PiecewiseMap map = PiecewiseMap.IDENTITY;
+                for(; composed > 0; --composed){
+                    var cached = path_maps.get(from + SEP + path.get(composed));
+                    if(cached != null){
+                        map = cached;
+                        break;
+                    }
+                }
+                for(int i = composed + 1; i < path.size(); ++i){
+                    map = map.then(category_converts.get(path.get(i - 1)).get(path.get(i)));
+                    path_maps.put(from + SEP + path.get(i), map);
+                }
+                return map;
+            }
+        }
+
+        public long map(String from, String to, long value){
+            return mapping(from, to).map(value);
         }
 
         public long mapSeedLocation(long seed){
+            return seedLocationMap.map(seed);
+        }
+
+        public long[] mapSeedLocations(long[] seeds){
+            return seedLocationMap.map(seeds);
+        }
+
+        // walks each convert in turn, kept as a reference for the composed map
+        public long mapSeedLocationByConvert(long seed){
             var value = seed;
             for(Convert convert : seedLocationPath){
                 value = convert.map(value);
@@ -51,13 +135,46 @@ public class Day05 {
         }
 
         public long minSeedLocation() {
-            return seeds.parallelStream()
-                    .mapToLong(this::mapSeedLocation)
+            return Arrays.stream(mapSeedLocations(seeds.stream().mapToLong(Long::longValue).toArray()))
                     .min()
                     .orElseThrow();
         }
 
+        public List<Range> seedRanges() {
+            var ranges = new ArrayList<Range>();
+            for(int i = 0; i < seeds.size(); i += 2){
+                ranges.add(new Range(seeds.get(i), seeds.get(i) + seeds.get(i + 1)));
+            }
+            return ranges;
+        }
+
+        public List<Range> mapSeedRangeLocations(Collection<Range> seedRanges){
+            List<Range> ranges = List.copyOf(seedRanges);
+            for(Convert convert : seedLocationPath){
+                ranges = convert.mapRanges(ranges);
+            }
+            return ranges;
+        }
+
+        public List<Range> mapLocationRangeSeeds(Range locationRange){
+            return locationSeedMap.unmap(locationRange);
+        }
+
+        // walks locations upward from the lowest, stopping once no remaining piece can beat the best found
         public long minSeedRangeLocation() {
+            return locationSeedMap.minMapped(seedRanges());
+        }
+
+        // cost follows the number of override boundaries crossed, not the number of seeds
+        public long minSeedRangeLocationByInterval() {
+            return mapSeedRangeLocations(seedRanges()).stream()
+                    .mapToLong(Range::start)
+                    .min()
+                    .orElseThrow();
+        }
+
+        // walks every seed, kept as a reference for the range method
+        public long minSeedRangeLocationBruteForce() {
             long minLocation = Long.MAX_VALUE;
             for(int i = 0; i <seeds.size(); i += 2){
                 log.info("at seed start " + seeds.get(i));
@@ -76,6 +193,13 @@ public class Day05 {
 
     record OverrideRange(long fromKeyStart, long fromKeyEnd, long offset) {}
 
+    // half-open [start, end)
+    record Range(long start, long end) {
+        Range offset(long offset){
+            return new Range(start + offset, end + offset);
+        }
+    }
+
     @Data
     @Accessors(fluent = true)
     static class Convert {
@@ -89,8 +213,161 @@ public class Day05 {
             }
             return key;
         }
+
+        // split the range on override boundaries, with the offset that applies to each piece
+        List<OverrideRange> splitRange(Range range){
+            var pieces = new ArrayList<OverrideRange>();
+            long at = range.start();
+            while(at < range.end()){
+                var entry = overrides().floorEntry(at);
+                if(entry != null && at < entry.getValue().fromKeyEnd){
+                    var override = entry.getValue();
+                    long end = Math.min(range.end(), override.fromKeyEnd);
+                    pieces.add(new OverrideRange(at, end, override.offset));
+                    at = end;
+                }
+                else {
+                    var next = overrides().higherKey(at);
+                    long end = next == null ? range.end() : Math.min(range.end(), next);
+                    pieces.add(new OverrideRange(at, end, 0));
+                    at = end;
+                }
+            }
+            return pieces;
+        }
+
+        List<Range> mapRange(Range range){
+            return splitRange(range).stream()
+                    .map(piece -> new Range(piece.fromKeyStart, piece.fromKeyEnd).offset(piece.offset))
+                    .toList();
+        }
+
+        List<Range> mapRanges(Collection<Range> ranges){
+            return ranges.stream()
+                    .flatMap(range -> mapRange(range).stream())
+                    .toList();
+        }
     }
 
+    // a chain of converts flattened into one piecewise-linear function: starts[i] begins a piece shifted by offsets[i]
+    @Data
+    @Accessors(fluent = true)
+    @RequiredArgsConstructor
+    static class PiecewiseMap {
+        final long[] starts;
+        final long[] offsets;
+
+        static final PiecewiseMap IDENTITY = new PiecewiseMap(new long[]{Long.MIN_VALUE}, new long[]{0});
+
+        static PiecewiseMap compose(Convert... converts){
+            var map = IDENTITY;
+            for(Convert convert : converts){
+                map = map.then(convert);
+            }
+            return map;
+        }
+
+        // this map followed by the convert
+        PiecewiseMap then(Convert convert){
+            // pieces of the input domain, each with its accumulated offset
+            var pieces = new ArrayList<OverrideRange>();
+            for(int i = 0; i < starts.length; ++i){
+                long end = i + 1 < starts.length ? starts[i + 1] : Long.MAX_VALUE;
+                long offset = offsets[i];
+                for(OverrideRange split : convert.splitRange(new Range(starts[i], end).offset(offset))){
+                    pieces.add(new OverrideRange(
+                            split.fromKeyStart - offset,
+                            split.fromKeyEnd - offset,
+                            offset + split.offset
+                    ));
+                }
+            }
+
+            // pieces are in input order, merge neighbours that shift by the same offset
+            var starts = new long[pieces.size()];
+            var offsets = new long[pieces.size()];
+            int size = 0;
+            for(OverrideRange piece : pieces){
+                if(size > 0 && offsets[size - 1] == piece.offset) continue;
+                starts[size] = piece.fromKeyStart;
+                offsets[size] = piece.offset;
+                ++size;
+            }
+            return new PiecewiseMap(Arrays.copyOf(starts, size), Arrays.copyOf(offsets, size));
+        }
+
+        long map(long key){
+            int i = Arrays.binarySearch(starts, key);
+            if(i < 0) i = -i - 2;
+            return key + offsets[i];
+        }
+
+        long[] map(long[] keys){
+            var values = new long[keys.length];
+            for(int i = 0; i < keys.length; ++i){
+                values[i] = map(keys[i]);
+            }
+            return values;
+        }
+    }
+
+    // the pieces of a piecewise map ordered by where they land, for mapping back from the output side
+    @Data
+    @Accessors(fluent = true)
+    @RequiredArgsConstructor
+    static class InverseMap {
+        final long[] toStarts;
+        final long[] toEnds;
+        final long[] offsets;
+
+        static InverseMap of(PiecewiseMap map){
+            int size = map.starts.length;
+            var order = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingLong(i -> map.starts[i] + map.offsets[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            var toStarts = new long[size];
+            var toEnds = new long[size];
+            var offsets = new long[size];
+            for(int i = 0; i < size; ++i){
+                int piece = order[i];
+                long fromEnd = piece + 1 < size ? map.starts[piece + 1] : Long.MAX_VALUE;
+                toStarts[i] = map.starts[piece] + map.offsets[piece];
+                toEnds[i] = fromEnd + map.offsets[piece];
+                offsets[i] = map.offsets[piece];
+            }
+            return new InverseMap(toStarts, toEnds, offsets);
+        }
+
+        // input ranges whose output lands in the given range
+        List<Range> unmap(Range range){
+            var ranges = new ArrayList<Range>();
+            for(int i = 0; i < toStarts.length && toStarts[i] < range.end(); ++i){
+                long start = Math.max(toStarts[i], range.start());
+                long end = Math.min(toEnds[i], range.end());
+                if(start < end) ranges.add(new Range(start, end).offset(-offsets[i]));
+            }
+            return ranges;
+        }
+
+        // lowest output of any input in the given ranges, scanning pieces from the bottom of the output space
+        long minMapped(Collection<Range> inputs){
+            long min = Long.MAX_VALUE;
+            for(int i = 0; i < toStarts.length && toStarts[i] < min; ++i){
+                long fromStart = toStarts[i] - offsets[i];
+                long fromEnd = toEnds[i] - offsets[i];
+                for(Range input : inputs){
+                    long start = Math.max(fromStart, input.start());
+                    if(start < Math.min(fromEnd, input.end())) min = Math.min(min, start + offsets[i]);
+                }
+            }
+            if(min == Long.MAX_VALUE) throw new IllegalArgumentException("No inputs to map");
+            return min;
+        }
+    }
+
+    static final Pattern MAP_PATTERN = Pattern.compile("(\\w+)-to-(\\w+) map");
 
     static Almanac parseData(String resource) throws IOException {
         Almanac almanac = new Almanac();
@@ -98,34 +375,14 @@ public class Day05 {
         for(String block : blocks) {
             String[] blockGroups = block.split(":");
             String data = blockGroups[1].substring(1);
-            switch (blockGroups[0]){
-                case "seeds":
-                    almanac.seeds = Arrays.stream(data.split(" ")).map(Long::valueOf).toList();
-                    break;
-                case "seed-to-soil map":
-                    almanac.seed_soil = parseOverrides(data);
-                    break;
-                case "soil-to-fertilizer map":
-                    almanac.soil_fertilizer = parseOverrides(data);
-                    break;
-                case "fertilizer-to-water map":
-                    almanac.fertilizer_water = parseOverrides(data);
-                    break;
-                case "water-to-light map":
-                    almanac.water_light = parseOverrides(data);
-                    break;
-                case "light-to-temperature map":
-                    almanac.light_temperature = parseOverrides(data);
-                    break;
-                case "temperature-to-humidity map":
-                    almanac.temperature_humidity = parseOverrides(data);
-                    break;
-                case "humidity-to-location map":
-                    almanac.humidity_location = parseOverrides(data);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unrecognized data block: " + blockGroups[0]);
+            if("seeds".equals(blockGroups[0])){
+                almanac.seeds = Arrays.stream(data.split(" ")).map(Long::valueOf).toList();
+                continue;
             }
+
+            Matcher mMap = MAP_PATTERN.matcher(blockGroups[0]);
+            if(!mMap.matches()) throw new IllegalArgumentException("Unrecognized data block: " + blockGroups[0]);
+            almanac.addConvert(mMap.group(1), mMap.group(2), parseOverrides(data));
         }
         almanac.init();
 
@@ -160,13 +417,21 @@ public class Day05 {
             Almanac sampleAlmanac = parseData("2023/05/sample");
             log.info("sample data " + sampleAlmanac);
             sampleAlmanac.mapSeedLocations();
+            log.info("sample composed map " + sampleAlmanac.seedLocationMap);
+            log.info("sample composed map matches converts " + LongStream.range(0, 100).allMatch(seed -> sampleAlmanac.mapSeedLocation(seed) == sampleAlmanac.mapSeedLocationByConvert(seed)));
             log.info("sample min seed location " + sampleAlmanac.minSeedLocation()); //35
+            log.info("sample soil 81 to humidity " + sampleAlmanac.map("soil", "humidity", 81)); //78
             log.info("sample min seed-range location " + sampleAlmanac.minSeedRangeLocation()); //46
+            log.info("sample min seed-range location by interval " + sampleAlmanac.minSeedRangeLocationByInterval()); //46
+            log.info("sample seeds for locations 46-56 " + sampleAlmanac.mapLocationRangeSeeds(new Range(46, 56)));
+            log.info("sample min seed-range location brute force " + sampleAlmanac.minSeedRangeLocationBruteForce()); //46
 
             Almanac puzzleAlmanac = parseData("2023/05/puzzle");
             log.info("puzzle min seed location " + puzzleAlmanac.minSeedLocation()); //289863851
             var timer = new Timer();
-            log.info("puzzle min seed-range location " + puzzleAlmanac.minSeedRangeLocation()); //60568880 34347ms
+            log.info("puzzle min seed-range location " + puzzleAlmanac.minSeedRangeLocation()); //60568880
+            timer.split();
+            log.info("puzzle min seed-range location by interval " + puzzleAlmanac.minSeedRangeLocationByInterval()); //60568880
             timer.stop();
 
         }
@@ -5,9 +5,11 @@ import lombok.extern.java.Log;
 import util.Timer;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.stream.LongStream;
@@ -50,7 +52,7 @@ public class Day06 {
 
 
     static long raceDistance(long time, long hold){
-        return hold * (time - hold);
+        return Math.multiplyExact(hold, time - hold);
     }
 
     static final String RACE_FORMAT = "\n  %3d  %4d";
@@ -62,7 +64,58 @@ public class Day06 {
         log.info("Race " + race + sb);
     }
 
+    // races below both limits keep time^2 and 4 * distance inside a long
+    static final long LONG_TIME_LIMIT = 1L << 31;
+    static final long LONG_DISTANCE_LIMIT = 1L << 60;
+
+    // winning holds lie strictly between the roots of hold^2 - time * hold + distance, and are symmetric about time / 2
     static long countWinnable(Race race){
+        if(race.time < 0) throw new IllegalArgumentException("Negative race time " + race);
+        if(race.distance < 0) return race.time + 1;
+        return race.time < LONG_TIME_LIMIT && race.distance < LONG_DISTANCE_LIMIT
+                ? countWinnableLong(race.time, race.distance)
+                : countWinnableBig(BigInteger.valueOf(race.time), BigInteger.valueOf(race.distance));
+    }
+
+    static long[] countWinnable(List<Race> races){
+        var counts = new long[races.size()];
+        for(int i = 0; i < counts.length; ++i) counts[i] = countWinnable(races.get(i));
+        return counts;
+    }
+
+    private static long countWinnableLong(long time, long distance){
+        long discriminant = time * time - 4 * distance;
+        if(discriminant <= 0) return 0;
+
+        long root = (long)Math.sqrt((double)discriminant);
+        while(root * root > discriminant) --root;
+        while((root + 1) * (root + 1) <= discriminant) ++root;
+
+        // least winning hold, the floating root only gets close so step onto the exact boundary
+        long hold = Math.max(0, (time - root) / 2);
+        while(hold > 0 && (hold - 1) * (time - hold + 1) > distance) --hold;
+        while(hold <= time - hold && hold * (time - hold) <= distance) ++hold;
+        return hold <= time - hold ? time - 2 * hold + 1 : 0;
+    }
+
+    private static long countWinnableBig(BigInteger time, BigInteger distance){
+        var discriminant = time.multiply(time).subtract(distance.shiftLeft(2));
+        if(discriminant.signum() <= 0) return 0;
+
+        var hold = time.subtract(discriminant.sqrt()).shiftRight(1).max(BigInteger.ZERO);
+        while(hold.signum() > 0 && raceDistance(time, hold.subtract(BigInteger.ONE)).compareTo(distance) > 0) hold = hold.subtract(BigInteger.ONE);
+        while(hold.compareTo(time.subtract(hold)) <= 0 && raceDistance(time, hold).compareTo(distance) <= 0) hold = hold.add(BigInteger.ONE);
+        return hold.compareTo(time.subtract(hold)) <= 0
+                ? time.subtract(hold.shiftLeft(1)).add(BigInteger.ONE).longValueExact()
+                : 0;
+    }
+
+    static BigInteger raceDistance(BigInteger time, BigInteger hold){
+        return hold.multiply(time.subtract(hold));
+    }
+
+    // tries every hold, kept as a reference for the closed form
+    static long countWinnableByEnumeration(Race race){
         return LongStream.rangeClosed(0, race.time)
                 .filter(hold -> race.distance < raceDistance(race.time, hold))
                 .count();
@@ -94,6 +147,8 @@ public class Day06 {
             timer.split();
             log.info("puzzle single winnable " + countWinnable(puzzleRace)); //42550411
             timer.split();
+            log.info("large single winnable " + countWinnable(new Race(1_000_000_000_000_000_000L, 123_456_789_012_345_678L)));
+            timer.split();
         }
         catch(Exception e){
             log.log(Level.SEVERE, "main", e);
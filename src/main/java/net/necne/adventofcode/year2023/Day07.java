@@ -3,16 +3,18 @@ package net.necne.adventofcode.year2023;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Resources;
 import lombok.Data;
-import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
 import lombok.extern.java.Log;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -63,10 +65,15 @@ public class Day07 {
         }
 
         public static Rank of(Hand hand, boolean wildcards){
-            if(hand.cards.length != 5) throw new IllegalArgumentException("Unsupported hand size " + hand);
+            return RankTable.get().rank(hand.cards, wildcards);
+        }
+
+        // ranks from the card counts, used to build the rank table
+        public static Rank of(Card[] cards, boolean wildcards){
+            if(cards.length != 5) throw new IllegalArgumentException("Unsupported hand size " + Arrays.toString(cards));
 
             var totalWildcards = new AtomicLong(0);
-            var card_counts = Arrays.stream(hand.cards)
+            var card_counts = Arrays.stream(cards)
                     .filter(card -> {
                         if(wildcards && Card.J.equals(card)) {
                            totalWildcards.addAndGet(1);
@@ -105,39 +112,131 @@ public class Day07 {
         }
     }
 
+    // rank of every five card hand under both rules, indexed by the card ordinals read as a base 13 number
+    static class RankTable {
+        // names a file to load the table from, or to save it to once built
+        static final String FILE_PROPERTY = "day07.rankTable";
+        static final int SIZE = (int)Math.pow(Card.values().length, 5);
+
+        final byte[] straight;
+        final byte[] wildcard;
+
+        RankTable(byte[] straight, byte[] wildcard) {
+            if(straight.length != SIZE || wildcard.length != SIZE) throw new IllegalArgumentException("Unexpected rank table size");
+            // a stale or corrupt table would otherwise fail later inside Rank.values()
+            for(int i = 0; i < SIZE; ++i) {
+                if(straight[i] < 0 || straight[i] >= Rank.values().length || wildcard[i] < 0 || wildcard[i] >= Rank.values().length) {
+                    throw new IllegalArgumentException("Unexpected rank ordinal at " + i);
+                }
+            }
+            this.straight = straight;
+            this.wildcard = wildcard;
+        }
+
+        // class initialization builds the table on first use and publishes it to every thread
+        private static class Holder {
+            static final RankTable TABLE = load();
+        }
+
+        static RankTable get() {
+            return Holder.TABLE;
+        }
+
+        static int index(Card[] cards) {
+            if(cards.length != 5) throw new IllegalArgumentException("Unsupported hand size " + Arrays.toString(cards));
+            int index = 0;
+            for(Card card : cards) index = index * Card.values().length + card.ordinal();
+            return index;
+        }
+
+        Rank rank(Card[] cards, boolean wildcards) {
+            return Rank.values()[(wildcards ? wildcard : straight)[index(cards)]];
+        }
+
+        static RankTable build() {
+            var straight = new byte[SIZE];
+            var wildcard = new byte[SIZE];
+            var cards = new Card[5];
+            for(int index = 0; index < SIZE; ++index) {
+                for(int i = cards.length - 1, rest = index; i >= 0; --i, rest /= Card.values().length) {
+                    cards[i] = Card.values()[rest % Card.values().length];
+                }
+                straight[index] = (byte) Rank.of(cards, false).ordinal();
+                wildcard[index] = (byte) Rank.of(cards, true).ordinal();
+            }
+            return new RankTable(straight, wildcard);
+        }
+
+        static RankTable load() {
+            var file = System.getProperty(FILE_PROPERTY);
+            if(file != null) {
+                var path = Path.of(file);
+                if(Files.exists(path)) {
+                    try {
+                        var bytes = Files.readAllBytes(path);
+                        if(bytes.length != SIZE * 2) throw new IllegalArgumentException("Unexpected rank table file size " + bytes.length);
+                        return new RankTable(Arrays.copyOfRange(bytes, 0, SIZE), Arrays.copyOfRange(bytes, SIZE, bytes.length));
+                    }
+                    catch(IOException | IllegalArgumentException e) {
+                        log.log(Level.WARNING, "unable to load rank table " + path + ", rebuilding", e);
+                    }
+                }
+            }
+
+            var table = build();
+            if(file != null) table.save(Path.of(file));
+            return table;
+        }
+
+        void save(Path path) {
+            try {
+                var bytes = Arrays.copyOf(straight, SIZE * 2);
+                System.arraycopy(wildcard, 0, bytes, SIZE, SIZE);
+                Files.write(path, bytes);
+            }
+            catch(IOException e) {
+                log.log(Level.WARNING, "unable to save rank table " + path, e);
+            }
+        }
+    }
+
     @Accessors(fluent = true)
     @Data
-    @RequiredArgsConstructor(staticName = "of")
     static class Hand {
         final Card[] cards;
         final int bid;
+        // sort keys, ascending from the weakest hand under each rule
+        final int straightKey;
+        final int wildcardKey;
+
+        Hand(Card[] cards, int bid) {
+            this.cards = cards;
+            this.bid = bid;
+            straightKey = key(cards, false);
+            wildcardKey = key(cards, true);
+        }
+
+        public static Hand of(Card[] cards, int bid) {
+            return new Hand(cards, bid);
+        }
+
+        // rank strength above five 4-bit card strengths, first card highest
+        static int key(Card[] cards, boolean wildcards) {
+            var rank = RankTable.get().rank(cards, wildcards);
+            int key = Rank.values().length - 1 - rank.ordinal();
+            for(Card card : cards) {
+                key = (key << 4) | (wildcards
+                        ? (card.wild ? 0 : Card.values().length - card.ordinal())
+                        : Card.values().length - 1 - card.ordinal());
+            }
+            return key;
+        }
     }
 
-    static final Comparator<Hand> HAND_STRAIGHT_COMPARATOR = (hand0, hand1) -> Comparator
-            .comparing(Rank::valueWithoutWildcards)
-            .thenComparing(Hand::cards, (cards0, cards1) -> {
-                int minLength = Math.min(cards0.length, cards1.length);
-                for(int i = 0; i < minLength; ++i) {
-                    int cmp = Card.compareStraight(cards0[i], cards1[i]);
-                    if(cmp != 0) return cmp;
-                }
-                return Integer.compare(cards0.length, cards1.length);
-            })
-            .reversed()
-            .compare(hand0, hand1);
-
-    static final Comparator<Hand> HAND_WILDCARD_COMPARATOR = (hand0, hand1) -> Comparator
-            .comparing(Rank::valueWithWildcards)
-            .thenComparing(Hand::cards, (cards0, cards1) -> {
-                int minLength = Math.min(cards0.length, cards1.length);
-                for(int i = 0; i < minLength; ++i) {
-                    int cmp = Card.compareWildcard(cards0[i], cards1[i]);
-                    if(cmp != 0) return cmp;
-                }
-                return Integer.compare(cards0.length, cards1.length);
-            })
-            .reversed()
-            .compare(hand0, hand1);
+    // weakest hand first, ranks and card order are already folded into the keys
+    static final Comparator<Hand> HAND_STRAIGHT_COMPARATOR = Comparator.comparingInt(Hand::straightKey);
+
+    static final Comparator<Hand> HAND_WILDCARD_COMPARATOR = Comparator.comparingInt(Hand::wildcardKey);
 
     static List<Hand> parseHands(String resource) throws IOException {
         return Arrays.stream(Resources.toString(Resources.getResource(resource), Charset.defaultCharset()).split("\n"))
@@ -161,16 +260,165 @@ public class Day07 {
                 .orElse(0);
     }
 
+    // hands arriving one at a time, with total winnings kept current on each insert instead of re-sorting
+    static class Leaderboard {
+        // treap over the distinct keys seen so far, each node holding the hands at its key and totals over its subtree
+        static class Node {
+            final int key;
+            final int priority;
+            int count;
+            long bids;
+            int subtreeCount;
+            long subtreeBids;
+            Node left;
+            Node right;
+
+            Node(int key, int priority) {
+                this.key = key;
+                this.priority = priority;
+            }
+
+            void update() {
+                subtreeCount = count + count(left) + count(right);
+                subtreeBids = bids + bids(left) + bids(right);
+            }
+
+            static int count(Node node) {
+                return node == null ? 0 : node.subtreeCount;
+            }
+
+            static long bids(Node node) {
+                return node == null ? 0 : node.subtreeBids;
+            }
+        }
+
+        final ToIntFunction<Hand> handKey;
+        final SplittableRandom priorities = new SplittableRandom(7);
+        Node root;
+        long totalBids = 0;
+        long winnings = 0;
+
+        Leaderboard(ToIntFunction<Hand> handKey) {
+            this.handKey = handKey;
+        }
+
+        // adds the hand behind any equal hands, returning its rank, every stronger hand moves up one rank
+        synchronized int add(Hand hand) {
+            int key = handKey.applyAsInt(hand);
+            int rank = 1;
+            long bidsAtOrBelow = 0;
+            for(var node = root; node != null; ) {
+                if(key < node.key) node = node.left;
+                else {
+                    rank += Node.count(node.left) + node.count;
+                    bidsAtOrBelow += Node.bids(node.left) + node.bids;
+                    node = key == node.key ? null : node.right;
+                }
+            }
+            root = insert(root, key, hand.bid);
+
+            winnings += (long)rank * hand.bid + (totalBids - bidsAtOrBelow);
+            totalBids += hand.bid;
+            return rank;
+        }
+
+        // O(log n) expected, rotating the new node up while its priority beats its parent's
+        Node insert(Node node, int key, int bid) {
+            if(node == null || key == node.key) {
+                if(node == null) node = new Node(key, priorities.nextInt());
+                ++node.count;
+                node.bids += bid;
+            }
+            else if(key < node.key) {
+                node.left = insert(node.left, key, bid);
+                if(node.left.priority > node.priority) node = rotateRight(node);
+            }
+            else {
+                node.right = insert(node.right, key, bid);
+                if(node.right.priority > node.priority) node = rotateLeft(node);
+            }
+            node.update();
+            return node;
+        }
+
+        static Node rotateRight(Node node) {
+            var top = node.left;
+            node.left = top.right;
+            top.right = node;
+            node.update();
+            return top;
+        }
+
+        static Node rotateLeft(Node node) {
+            var top = node.right;
+            node.right = top.left;
+            top.left = node;
+            node.update();
+            return top;
+        }
+
+        synchronized long winnings() {
+            return winnings;
+        }
+
+        synchronized int size() {
+            return Node.count(root);
+        }
+    }
+
+    // each hand packed as its key above its bid, sorted by key so the position gives the rank
+    static long winnings(Collection<Hand> hands, ToIntFunction<Hand> handKey){
+        var key_bids = new long[hands.size()];
+        int i = 0;
+        for(Hand hand : hands) {
+            // a negative bid would sign extend over the key bits
+            if(hand.bid < 0) throw new IllegalArgumentException("Negative bid " + hand);
+            key_bids[i++] = ((long)handKey.applyAsInt(hand) << 32) | (hand.bid & 0xFFFFFFFFL);
+        }
+
+        radixSort(key_bids, 32, 24);
+
+        long total = 0;
+        for(i = 0; i < key_bids.length; ++i) total += (i + 1) * (key_bids[i] & 0xFFFFFFFFL);
+        return total;
+    }
+
+    // least significant digit first over the given bit span, 8 bits per pass
+    static void radixSort(long[] values, int fromBit, int bits){
+        long[] from = values;
+        long[] to = new long[values.length];
+        var counts = new int[257];
+        for(int shift = fromBit; shift < fromBit + bits; shift += 8){
+            Arrays.fill(counts, 0);
+            for(long value : from) ++counts[(int)((value >>> shift) & 0xFF) + 1];
+            for(int d = 0; d < 256; ++d) counts[d + 1] += counts[d];
+            for(long value : from) to[counts[(int)((value >>> shift) & 0xFF)]++] = value;
+
+            var swap = from;
+            from = to;
+            to = swap;
+        }
+        if(from != values) System.arraycopy(from, 0, values, 0, values.length);
+    }
+
     public static void main(String[] args) {
         try {
             var sampleHands = parseHands("2023/07/sample");
             log.info("sample hands " + sampleHands);
             log.info("sample winnings straight " + winnings(sampleHands, HAND_STRAIGHT_COMPARATOR)); //6440
             log.info("sample winnings wildcard " + winnings(sampleHands, HAND_WILDCARD_COMPARATOR)); //5905
+            log.info("sample winnings straight by key " + winnings(sampleHands, Hand::straightKey)); //6440
+            log.info("sample winnings wildcard by key " + winnings(sampleHands, Hand::wildcardKey)); //5905
 
             var puzzleHands = parseHands("2023/07/puzzle");
             log.info("puzzle winnings straight " + winnings(puzzleHands, HAND_STRAIGHT_COMPARATOR)); //251545216
             log.info("puzzle winnings wildcard " + winnings(puzzleHands, HAND_WILDCARD_COMPARATOR)); //250384185
+            log.info("puzzle winnings straight by key " + winnings(puzzleHands, Hand::straightKey)); //251545216
+            log.info("puzzle winnings wildcard by key " + winnings(puzzleHands, Hand::wildcardKey)); //250384185
+
+            var leaderboard = new Leaderboard(Hand::wildcardKey);
+            puzzleHands.forEach(leaderboard::add);
+            log.info("puzzle leaderboard wildcard " + leaderboard.winnings()); //250384185
 
         } catch (Exception e) {
             log.log(Level.SEVERE, "main", e);
@@ -12,11 +12,17 @@ import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -106,6 +112,202 @@ public class Day08 {
         }
     }
 
+    // the node map flattened to int arrays, node ids assigned through a perfect hash of the 3 character names
+    @Data
+    @Accessors(fluent = true)
+    @RequiredArgsConstructor
+    static class Graph {
+        static final int NAME_BASE = 36;
+
+        final String[] names;
+        final int[] hash_ids;
+        final int[] left;
+        final int[] right;
+        final boolean[] end;
+        final int[] starts;
+        final boolean[] directionsLeft;
+
+        // digits then upper case letters, each name a unique base 36 number
+        static int hash(String name){
+            if(name.length() != 3) throw new IllegalArgumentException("Unsupported node name " + name);
+            int hash = 0;
+            for(int i = 0; i < 3; ++i){
+                char chr = name.charAt(i);
+                int digit = Character.digit(chr, NAME_BASE);
+                if(digit < 0 || Character.isLowerCase(chr)) throw new IllegalArgumentException("Unsupported node name " + name);
+                hash = hash * NAME_BASE + digit;
+            }
+            return hash;
+        }
+
+        static Graph compile(Navigate navigate){
+            int size = navigate.id_nodes.size();
+            var hash_ids = new int[NAME_BASE * NAME_BASE * NAME_BASE];
+            Arrays.fill(hash_ids, -1);
+            var names = navigate.id_nodes.keySet().toArray(String[]::new);
+            for(int id = 0; id < size; ++id) hash_ids[hash(names[id])] = id;
+
+            var left = new int[size];
+            var right = new int[size];
+            var end = new boolean[size];
+            for(int id = 0; id < size; ++id){
+                Node node = navigate.id_nodes.get(names[id]);
+                left[id] = hash_ids[hash(node.nodeLeft.id)];
+                right[id] = hash_ids[hash(node.nodeRight.id)];
+                end[id] = node.end;
+            }
+
+            var starts = IntStream.range(0, size).filter(id -> names[id].endsWith("A")).toArray();
+
+            var directionsLeft = new boolean[navigate.directions.size()];
+            for(int d = 0; d < directionsLeft.length; ++d) directionsLeft[d] = navigate.directions.get(d) == Direction.L;
+
+            return new Graph(names, hash_ids, left, right, end, starts, directionsLeft);
+        }
+
+        int id(String name){
+            int id = hash_ids[hash(name)];
+            if(id < 0) throw new IllegalArgumentException("Unknown node " + name);
+            return id;
+        }
+
+        int follow(int node, int direction){
+            return directionsLeft[direction] ? left[node] : right[node];
+        }
+    }
+
+    // node reached after 2^level full passes of the directions, so any step count is a handful of lookups
+    @Data
+    @Accessors(fluent = true)
+    @RequiredArgsConstructor
+    static class JumpTable {
+        final Graph graph;
+        // passes[level][node]
+        final int[][] passes;
+
+        // enough levels for step counts up to maxSteps
+        static JumpTable of(Graph graph, long maxSteps){
+            int directionsTotal = graph.directionsLeft.length;
+            int size = graph.names.length;
+            int levels = Math.max(1, 64 - Long.numberOfLeadingZeros(maxSteps / directionsTotal));
+
+            var passes = new int[levels][size];
+            for(int node = 0; node < size; ++node){
+                int at = node;
+                for(int direction = 0; direction < directionsTotal; ++direction) at = graph.follow(at, direction);
+                passes[0][node] = at;
+            }
+            for(int level = 1; level < levels; ++level){
+                var previous = passes[level - 1];
+                for(int node = 0; node < size; ++node) passes[level][node] = previous[previous[node]];
+            }
+            return new JumpTable(graph, passes);
+        }
+
+        int nodeAfter(int start, long steps){
+            int directionsTotal = graph.directionsLeft.length;
+            long fullPasses = steps / directionsTotal;
+            if(fullPasses >> passes.length != 0) throw new IllegalArgumentException("Steps beyond jump table range " + steps);
+
+            int at = start;
+            for(int level = 0; fullPasses != 0; ++level, fullPasses >>= 1){
+                if((fullPasses & 1) != 0) at = passes[level][at];
+            }
+            int remaining = (int)(steps % directionsTotal);
+            for(int direction = 0; direction < remaining; ++direction) at = graph.follow(at, direction);
+            return at;
+        }
+
+        String nodeAfter(String start, long steps){
+            return graph.names[nodeAfter(graph.id(start), steps)];
+        }
+    }
+
+    // where one ghost's (node, direction index) walk repeats: steps before the loop, loop length, and every step landing on an end node up to the loop's close
+    record GhostCycle(int prefix, int length, BitSet ends) {
+        boolean endAt(long step){
+            if(step >= prefix + length) step = prefix + (step - prefix) % length;
+            return ends.get((int)step);
+        }
+    }
+
+    static GhostCycle ghostCycle(Graph graph, int start, int[] stateSteps){
+        int directionsTotal = graph.directionsLeft.length;
+        Arrays.fill(stateSteps, -1);
+        var ends = new BitSet();
+        int node = start;
+        int direction = 0;
+        for(int step = 0; ; ++step){
+            int state = node * directionsTotal + direction;
+            if(stateSteps[state] >= 0) return new GhostCycle(stateSteps[state], step - stateSteps[state], ends);
+            stateSteps[state] = step;
+            if(graph.end[node]) ends.set(step);
+
+            node = graph.follow(node, direction);
+            direction = (direction + 1) % directionsTotal;
+        }
+    }
+
+    // steps = residue (mod modulus)
+    record Congruence(BigInteger residue, BigInteger modulus) {
+        // both congruences at once, or null when they never agree
+        Congruence and(Congruence other){
+            var gcd = modulus.gcd(other.modulus);
+            var diff = other.residue.subtract(residue);
+            if(diff.mod(gcd).signum() != 0) return null;
+            var otherReduced = other.modulus.divide(gcd);
+            var k = diff.divide(gcd).multiply(modulus.divide(gcd).modInverse(otherReduced)).mod(otherReduced);
+            var lcm = modulus.multiply(otherReduced);
+            return new Congruence(residue.add(modulus.multiply(k)).mod(lcm), lcm);
+        }
+
+        // least step at or after the given one
+        BigInteger atOrAfter(BigInteger step){
+            var behind = step.subtract(residue);
+            if(behind.signum() <= 0) return residue;
+            return residue.add(behind.add(modulus).subtract(BigInteger.ONE).divide(modulus).multiply(modulus));
+        }
+    }
+
+    // general solver, each ghost's loop and all its end hits combined in exact arithmetic
+    static BigInteger followCycles(Navigate navigate){
+        var graph = Graph.compile(navigate);
+        var stateSteps = new int[graph.names.length * graph.directionsLeft.length];
+        var cycles = Arrays.stream(graph.starts)
+                .mapToObj(start -> ghostCycle(graph, start, stateSteps))
+                .toList();
+        if(cycles.isEmpty()) throw new IllegalArgumentException("No ghost starts");
+
+        // before every ghost is inside its loop, check each early end of the ghost with the longest lead in directly
+        var longest = cycles.stream().max(Comparator.comparingInt(GhostCycle::prefix)).orElseThrow();
+        int looped = longest.prefix;
+        for(int step = longest.ends.nextSetBit(0); step >= 0 && step < looped; step = longest.ends.nextSetBit(step + 1)){
+            final long at = step;
+            if(cycles.stream().allMatch(cycle -> cycle.endAt(at))) return BigInteger.valueOf(step);
+        }
+
+        // afterwards each ghost is at an end exactly on its loop residues, fold them together pairwise
+        List<Congruence> solutions = List.of(new Congruence(BigInteger.ZERO, BigInteger.ONE));
+        for(GhostCycle cycle : cycles){
+            var modulus = BigInteger.valueOf(cycle.length);
+            var next = new ArrayList<Congruence>();
+            for(int step = cycle.ends.nextSetBit(cycle.prefix); step >= 0; step = cycle.ends.nextSetBit(step + 1)){
+                var hit = new Congruence(BigInteger.valueOf(step).mod(modulus), modulus);
+                for(Congruence solution : solutions){
+                    var combined = solution.and(hit);
+                    if(combined != null) next.add(combined);
+                }
+            }
+            solutions = next;
+        }
+
+        var loopedStep = BigInteger.valueOf(looped);
+        return solutions.stream()
+                .map(solution -> solution.atOrAfter(loopedStep))
+                .min(BigInteger::compareTo)
+                .orElseThrow(() -> new IllegalArgumentException("Ghosts never reach ends together"));
+    }
+
     static Navigate parseNavigate(String resource) throws IOException {
         String[] groups = Resources.toString(Resources.getResource(resource), Charset.defaultCharset()).split("\n\n");
         assert groups.length == 2;
@@ -155,6 +357,74 @@ public class Day08 {
         return steps;
     }
 
+    // steps run by each worker between barriers in followAllLockstep
+    static final int LOCKSTEP_CHUNK = 1 << 16;
+
+    // brute force reference for the optimized solvers: ghosts step in place over the compiled graph, each worker owns a slice of
+    // ghosts and marks the steps where all of its ghosts are on ends, and the bitmasks are combined once per chunk of steps
+    static long followAllLockstep(Navigate navigate, long maxSteps) {
+        var graph = Graph.compile(navigate);
+        int ghosts = graph.starts.length;
+        if(ghosts == 0) throw new IllegalArgumentException("No ghost starts");
+        if(Arrays.stream(graph.starts).allMatch(start -> graph.end[start])) return 0;
+
+        int directionsTotal = graph.directionsLeft.length;
+        int workers = Math.min(ghosts, Runtime.getRuntime().availableProcessors());
+        int words = LOCKSTEP_CHUNK / Long.SIZE;
+        // workerEnds[worker] bit s is set when the worker's ghosts all sit on ends after step chunkStart + s + 1
+        var workerEnds = new long[workers][words];
+        var chunkStart = new long[]{0};
+        var result = new long[]{-1};
+
+        var barrier = new CyclicBarrier(workers, () -> {
+            for(int word = 0; word < words && result[0] < 0; ++word){
+                long all = -1L;
+                for(long[] ends : workerEnds) all &= ends[word];
+                if(all != 0) result[0] = chunkStart[0] + (long)word * Long.SIZE + Long.numberOfTrailingZeros(all) + 1;
+            }
+            chunkStart[0] += LOCKSTEP_CHUNK;
+        });
+
+        var executor = Executors.newFixedThreadPool(workers);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for(int w = 0; w < workers; ++w){
+                final int worker = w;
+                futures.add(executor.submit(() -> {
+                    var positions = Arrays.copyOfRange(graph.starts, ghosts * worker / workers, ghosts * (worker + 1) / workers);
+                    var ends = workerEnds[worker];
+                    while(result[0] < 0 && chunkStart[0] < maxSteps){
+                        Arrays.fill(ends, 0L);
+                        int direction = (int)(chunkStart[0] % directionsTotal);
+                        for(int step = 0; step < LOCKSTEP_CHUNK; ++step){
+                            boolean goLeft = graph.directionsLeft[direction];
+                            boolean allEnd = true;
+                            for(int g = 0; g < positions.length; ++g){
+                                int at = goLeft ? graph.left[positions[g]] : graph.right[positions[g]];
+                                positions[g] = at;
+                                allEnd &= graph.end[at];
+                            }
+                            if(allEnd) ends[step >>> 6] |= 1L << step;
+                            if(++direction == directionsTotal) direction = 0;
+                        }
+                        barrier.await();
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> future : futures) future.get();
+        }
+        catch(InterruptedException | ExecutionException e){
+            throw new IllegalStateException("Lockstep verification failed", e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        if(result[0] < 0 || result[0] > maxSteps) throw new IllegalArgumentException("Ghosts not aligned within " + maxSteps + " steps");
+        return result[0];
+    }
+
     static boolean isPrime(int number){
         return number > 1
                 && IntStream.rangeClosed(2, (int)Math.sqrt(number))
@@ -226,9 +496,18 @@ public class Day08 {
 
             var sample3Navigate = parseNavigate("2023/08/sample3");
             log.info("sample3 follow-all steps: "+ followAll(sample3Navigate));
-
+            log.info("sample3 cycle follow-all steps: "+ followCycles(sample3Navigate)); // 6
+            log.info("sample3 lockstep follow-all steps: "+ followAllLockstep(sample3Navigate, 1000)); // 6
 
             var timer = new Timer();
+            log.info("puzzle cycle follow-all steps: " + followCycles(puzzleNavigate)); //11795205644011
+            timer.split("cycle success");
+
+            var jumpTable = JumpTable.of(Graph.compile(puzzleNavigate), 1_000_000_000_000_000L);
+            log.info("puzzle jump AAA after 16409 steps: " + jumpTable.nodeAfter("AAA", 16409)); // ZZZ
+            log.info("puzzle jump AAA after 10^15 steps: " + jumpTable.nodeAfter("AAA", 1_000_000_000_000_000L));
+            timer.split("jump table");
+
             try {
                 log.info("puzzle quick follow-all steps: " + followQuick(puzzleNavigate)); //11795205644011
                 timer.split("quick success");
@@ -1,7 +1,9 @@
 package net.necne.adventofcode.year2023
 
 import com.google.common.io.Resources
+import java.math.BigInteger
 import java.nio.charset.Charset
+import java.util.concurrent.ConcurrentHashMap
 
 // https://adventofcode.com/2023/day/9
 
@@ -51,7 +53,175 @@ private fun predict(resource: String) {
     )
 }
 
+private const val EXTRAPOLATE_CHUNK = 4096
+
+// difference triangle built in place: each level shrinks by one and leaves its last entry behind, so the next value is
+// the sum of the array afterwards and the previous value the alternating sum of each level's head.
+// Returns false when a long overflows, leaving values unusable.
+private fun extrapolate(values: LongArray, size: Int, out: LongArray): Boolean {
+    try {
+        var prev = 0L
+        var odd = true
+        for (level in size downTo 1) {
+            prev = if (odd) Math.addExact(prev, values[0]) else Math.subtractExact(prev, values[0])
+            odd = !odd
+            for (i in 0..<level - 1) values[i] = Math.subtractExact(values[i + 1], values[i])
+        }
+        var next = 0L
+        for (i in 0..<size) next = Math.addExact(next, values[i])
+        out[0] = prev
+        out[1] = next
+        return true
+    } catch (e: ArithmeticException) {
+        return false
+    }
+}
+
+private fun extrapolateBig(measures: List<BigInteger>): Pair<BigInteger, BigInteger> {
+    val values = measures.toTypedArray()
+    var prev = BigInteger.ZERO
+    var odd = true
+    for (level in values.size downTo 1) {
+        prev = if (odd) prev + values[0] else prev - values[0]
+        odd = !odd
+        for (i in 0..<level - 1) values[i] = values[i + 1] - values[i]
+    }
+    return Pair(prev, values.fold(BigInteger.ZERO, BigInteger::add))
+}
+
+// reused across the histories of a chunk, so parsing does not allocate per line
+private class MeasureBuffer(var values: LongArray = LongArray(32), var size: Int = 0) {
+    // space separated longs, false when a value does not fit in a long
+    fun parse(history: String): Boolean {
+        size = 0
+        var i = 0
+        try {
+            while (i < history.length) {
+                while (i < history.length && history[i] == ' ') ++i
+                if (i == history.length) break
+                val negative = history[i] == '-'
+                if (negative) ++i
+                var value = 0L
+                while (i < history.length && history[i] != ' ') {
+                    val digit = history[i++] - '0'
+                    if (digit !in 0..9) throw NumberFormatException("Bad measure in $history")
+                    value = Math.addExact(Math.multiplyExact(value, 10L), digit.toLong())
+                }
+                if (size == values.size) values = values.copyOf(values.size * 2)
+                values[size++] = if (negative) -value else value
+            }
+            return true
+        } catch (e: ArithmeticException) {
+            return false
+        }
+    }
+}
+
+// sums of previous and next values over a chunk of histories, in longs until they overflow
+private fun extrapolateChunk(histories: List<String>): Pair<BigInteger, BigInteger> {
+    val buffer = MeasureBuffer()
+    val out = LongArray(2)
+    var prevSum = 0L
+    var nextSum = 0L
+    var prevBig = BigInteger.ZERO
+    var nextBig = BigInteger.ZERO
+    for (history in histories) {
+        if (buffer.parse(history) && extrapolate(buffer.values, buffer.size, out)) {
+            try {
+                val prev = Math.addExact(prevSum, out[0])
+                nextSum = Math.addExact(nextSum, out[1])
+                prevSum = prev
+            } catch (e: ArithmeticException) {
+                prevBig += BigInteger.valueOf(out[0])
+                nextBig += BigInteger.valueOf(out[1])
+            }
+            continue
+        }
+        val (prev, next) = extrapolateBig(history.trim().split(Regex(" +")).map { it.toBigInteger() })
+        prevBig += prev
+        nextBig += next
+    }
+    return Pair(prevBig + BigInteger.valueOf(prevSum), nextBig + BigInteger.valueOf(nextSum))
+}
+
+private fun extrapolate(resource: String): Pair<BigInteger, BigInteger> {
+    val predictions = parseHistory(resource)
+        .filter { it.isNotBlank() }
+        .chunked(EXTRAPOLATE_CHUNK)
+        .parallelStream()
+        .map { extrapolateChunk(it) }
+        .reduce(Pair(BigInteger.ZERO, BigInteger.ZERO)) { a, b -> Pair(a.first + b.first, a.second + b.second) }
+
+    print(
+        """
+> $resource extrapolated
+  prev ${predictions.first}
+  next ${predictions.second}
+"""
+    )
+    return predictions
+}
+
+// live series keyed by id, each keeping only the last diagonal of its difference triangle
+class SeriesPredictor {
+    // diagonal[k] is the last k-th difference, levels past size are all zero and not stored
+    class Diagonal {
+        var diagonal = LongArray(0)
+        // the next diagonal is built here and swapped in, so an overflow leaves the series as it was
+        private var scratch = LongArray(0)
+        var size = 0
+        var count = 0
+        var next = 0L
+
+        // appends the measurement and returns the extrapolated next value, O(size) unless the degree grows
+        fun push(measure: Long): Long {
+            if (scratch.size < size) scratch = LongArray(size)
+            var value = measure
+            for (k in 0..<size) {
+                scratch[k] = value
+                value = Math.subtractExact(value, diagonal[k])
+            }
+            var newSize = size
+
+            // the levels that were zero up to the newest one all take the carried difference
+            if (value != 0L) {
+                if (scratch.size < count + 1) scratch = scratch.copyOf(count + 1)
+                scratch.fill(value, size, count + 1)
+                newSize = count + 1
+            }
+            while (newSize > 0 && scratch[newSize - 1] == 0L) --newSize
+
+            var sum = 0L
+            for (k in 0..<newSize) sum = Math.addExact(sum, scratch[k])
+
+            val old = diagonal
+            diagonal = scratch
+            scratch = if (old.size < newSize) LongArray(newSize) else old
+            size = newSize
+            ++count
+            next = sum
+            return next
+        }
+    }
+
+    private val series = ConcurrentHashMap<String, Diagonal>()
+
+    fun push(id: String, measure: Long): Long {
+        val diagonal = series.computeIfAbsent(id) { Diagonal() }
+        return synchronized(diagonal) { diagonal.push(measure) }
+    }
+
+    fun next(id: String): Long? = series[id]?.let { synchronized(it) { it.next } }
+}
+
 fun main() {
     predict("2023/09/sample") // 2,114
-    predict("2023/09/puzzle") // 864,1647269739
+    extrapolate("2023/09/sample") // 2,114
+    extrapolate("2023/09/puzzle") // 864,1647269739
+
+    val predictor = SeriesPredictor()
+    parseHistory("2023/09/sample").forEachIndexed { id, history ->
+        history.split(" ").forEach { predictor.push("sample$id", it.toLong()) }
+        println("  sample$id next ${predictor.next("sample$id")}") // 18, 28, 68
+    }
 }
@@ -1,7 +1,7 @@
 package net.necne.adventofcode.year2023
 
 import com.google.common.io.Resources
-import java.nio.charset.Charset
+import java.util.BitSet
 
 // https://adventofcode.com/2023/day/10
 
@@ -20,7 +20,8 @@ enum class Dir(val modCol: Int, val modRow: Int) {
     },
     ;
 
-    fun apply(pos: Pos) = Pos(pos.col + modCol, pos.row + modRow)
+    // bit of this direction in a pipe shape mask
+    val bit get() = 1 shl ordinal
 
     abstract fun from(): Dir
 }
@@ -35,156 +36,154 @@ enum class Pipe(val symbol: Char, val dirs: List<Dir>) {
     GROUND('.', listOf()),
     START('S', listOf()), ;
 
-    fun transitionNorth() = dirs.contains(Dir.N)
-    fun transitionSouth() = dirs.contains(Dir.S)
+    // shape as a bitmask of Dir.bit
+    val mask = dirs.fold(0) { mask, dir -> mask or dir.bit }
 }
 
-data class Pos(var col: Int, var row: Int) {}
+// pipe map as one byte per cell holding the Dir mask of its shape, start cell resolved to its shape
+class PipeGrid(val cells: ByteArray, val colCount: Int, val rowCount: Int, val start: Int) {
+    fun mask(col: Int, row: Int) = cells[row * colCount + col].toInt()
 
-data class TrackedPos(val pos: Pos, val from: Dir) {
-    fun apply(dir: Dir) = TrackedPos(dir.apply(pos), dir.from())
-}
-
-data class Cell(var pipe: Pipe, var start: Boolean = false, var path: Boolean = false) {
-
-    fun plot() = if(path) "*" else pipe.symbol
-}
-
-data class Layout(val cells: List<List<Cell>>, val colCount: Int = cells.first().size, val rowCount: Int = cells.size, val start: Pos = findStart(cells)) {
-    fun at(pos: Pos) = cells[pos.row][pos.col]
-}
+    companion object {
+        private val SYMBOL_MASKS = ByteArray(128).also { masks ->
+            Pipe.entries.forEach { masks[it.symbol.code] = it.mask.toByte() }
+        }
 
-fun parseLayout(resource: String): Layout {
-    val layout = Layout(Resources.readLines(Resources.getResource(resource), Charset.defaultCharset()).map {
-        it.toCharArray()
-            .map { chr -> Pipe.entries.find { pipe -> pipe.symbol == chr } }
-            .filterNotNull()
-            .map { pipe -> Cell(pipe) }
-    })
-
-    val startPos = findStart(layout.cells)
-    val startCell = layout.at(startPos)
-    startCell.start = true
-    startCell.path = true
-
-    // determine the shape of the start position
-    val startDirs = Dir.entries
-        .map { it to it.apply(startPos) }
-        .filter {
-            val p = it.second
-
-            0 <= p.col && p.col < layout.colCount
-                    && 0 <= p.row && p.row < layout.rowCount
-                    && layout.at(p).pipe.dirs.contains(it.first.from())
+        fun parse(resource: String): PipeGrid {
+            val bytes = Resources.toByteArray(Resources.getResource(resource))
+            var colCount = -1
+            var rowCount = 0
+            var start = -1
+            val cells = ByteArray(bytes.size)
+            var size = 0
+            var rowStart = 0
+            var lineStart = 0
+            for (i in 0..bytes.size) {
+                val b = if (i < bytes.size) bytes[i].toInt() and 0xFF else '\n'.code
+                if (b == '\r'.code) continue
+                if (b == '\n'.code) {
+                    val width = size - rowStart
+                    if (width > 0) {
+                        if (colCount < 0) colCount = width
+                        else if (width != colCount) throw IllegalArgumentException("Ragged row ${rowCount + 1} in $resource")
+                        ++rowCount
+                    }
+                    rowStart = size
+                    lineStart = i + 1
+                    continue
+                }
+                if (b == 'S'.code) {
+                    if (start >= 0) throw IllegalArgumentException("Multiple starts in $resource")
+                    start = size
+                }
+                else if (b >= 128 || (b != '.'.code && SYMBOL_MASKS[b].toInt() == 0)) {
+                    throw IllegalArgumentException("Unknown pipe '${b.toChar()}' at ${i - lineStart} in $resource")
+                }
+                cells[size++] = if (b < 128) SYMBOL_MASKS[b] else 0
+            }
+            if (start < 0) throw IllegalArgumentException("Unable to determine start from $resource")
+
+            val grid = PipeGrid(cells.copyOf(size), colCount, rowCount, start)
+            // determine the shape of the start position from the neighbours pointing back at it
+            val col = start % colCount
+            val row = start / colCount
+            var startMask = 0
+            for (dir in Dir.entries) {
+                val c = col + dir.modCol
+                val r = row + dir.modRow
+                if (c in 0 until colCount && r in 0 until rowCount && grid.mask(c, r) and dir.from().bit != 0) startMask = startMask or dir.bit
+            }
+            if (Integer.bitCount(startMask) != 2) throw IllegalArgumentException("Start in $resource connects to ${Integer.bitCount(startMask)} pipes")
+            grid.cells[start] = startMask.toByte()
+            return grid
         }
-        .map { it.first }
-    startCell.pipe = Pipe.entries.filter { it.dirs.containsAll(startDirs) }.first()
+    }
 
-    println("directions out of start: $startDirs")
+    // walk the loop once from the start, accumulating twice the shoelace area along the way; loop cells are set in onLoop when given
+    fun trace(onLoop: BitSet? = null): LoopTrace {
+        var col = start % colCount
+        var row = start / colCount
+        var dir = Integer.numberOfTrailingZeros(cells[start].toInt())
+        var length = 0
+        var area2 = 0L
+        do {
+            val modCol = DIR_COLS[dir]
+            val modRow = DIR_ROWS[dir]
+            area2 += col.toLong() * modRow - modCol.toLong() * row
+            col += modCol
+            row += modRow
+            ++length
+            if (col !in 0 until colCount || row !in 0 until rowCount) throw IllegalArgumentException("Loop leaves the map at $col,$row")
+            onLoop?.set(row * colCount + col)
+            // leave by the other connection than the one just entered through
+            val exits = mask(col, row) and (1 shl (dir xor 2)).inv()
+            if (exits == 0 || mask(col, row) and (1 shl (dir xor 2)) == 0) throw IllegalArgumentException("Loop broken at $col,$row")
+            dir = Integer.numberOfTrailingZeros(exits)
+        } while (row * colCount + col != start)
+        // Pick's theorem: area = interior + boundary / 2 - 1
+        return LoopTrace(length, (Math.abs(area2) - length) / 2 + 1)
+    }
+}
 
+// Dir offsets by ordinal, N E S W, so the reverse of ordinal d is d xor 2
+private val DIR_COLS = IntArray(Dir.entries.size) { Dir.entries[it].modCol }
+private val DIR_ROWS = IntArray(Dir.entries.size) { Dir.entries[it].modRow }
 
-    return layout
+data class LoopTrace(val length: Int, val interior: Long) {
+    fun farthest() = length / 2
 }
 
-fun findStart(cells: List<List<Cell>>): Pos {
-    for (iRow in cells.indices) {
-        val row = cells[iRow]
-        for (iCol in row.indices) {
-            if (row[iCol].pipe == Pipe.START) return Pos(iCol, iRow)
+// read-only inside/outside index over one loop, safe to share once built
+class LoopIndex(val grid: PipeGrid) {
+    private val colCount = grid.colCount
+    private val onLoop = BitSet(grid.cells.size)
+    val trace = grid.trace(onLoop)
+
+    // per row, colCount + 1 prefix counts: loop cells with a north connection (vertical crossings) and interior cells
+    private val crossings = IntArray(grid.rowCount * (colCount + 1))
+    private val interior = IntArray(grid.rowCount * (colCount + 1))
+
+    init {
+        val northBit = Dir.N.bit
+        for (row in 0 until grid.rowCount) {
+            val cell = row * colCount
+            val prefix = row * (colCount + 1)
+            for (col in 0 until colCount) {
+                val loop = onLoop[cell + col]
+                val crossed = crossings[prefix + col] + if (loop && grid.cells[cell + col].toInt() and northBit != 0) 1 else 0
+                crossings[prefix + col + 1] = crossed
+                interior[prefix + col + 1] = interior[prefix + col] + if (!loop && crossed and 1 == 1) 1 else 0
+            }
         }
     }
-    throw Exception("Unable to determine start from layout")
-}
 
-fun connectedFrom(layout: Layout, pos: Pos) =
-    Dir.entries
-        .map { it to it.apply(pos) }
-        .filter {
-            val p = it.second
+    fun onLoop(col: Int, row: Int) = onLoop[index(col, row)]
 
-            0 <= p.col && p.col < layout.colCount
-                    && 0 <= p.row && p.row < layout.rowCount
-                    && layout.at(p).pipe.dirs.contains(it.first.from())
-        }
-        .map { TrackedPos(it.second, it.first.from()) }
-
-fun traverse(layout: Layout, tracked: TrackedPos) =
-    tracked.apply(
-        layout.at(tracked.pos)
-            .pipe.dirs.first { it != tracked.from }
-    )
-
-fun printLayout(layout: Layout) {
-    println(
-        layout.cells.map {
-            row -> "" + row.map {
-                cell -> cell.plot()
-            }
-            .joinToString("")
-        }.joinToString("\n")
+    fun inside(col: Int, row: Int) = !onLoop[index(col, row)] && crossings[row * (colCount + 1) + col] and 1 == 1
 
-    )
+    // interior cells within the inclusive rectangle
+    fun interior(fromCol: Int, fromRow: Int, toCol: Int, toRow: Int): Long {
+        index(fromCol, fromRow)
+        index(toCol, toRow)
+        if (fromCol > toCol || fromRow > toRow) throw IllegalArgumentException("Empty rectangle $fromCol,$fromRow to $toCol,$toRow")
+        var count = 0L
+        for (row in fromRow..toRow) {
+            val prefix = row * (colCount + 1)
+            count += interior[prefix + toCol + 1] - interior[prefix + fromCol]
+        }
+        return count
+    }
 
+    private fun index(col: Int, row: Int): Int {
+        if (col !in 0 until colCount || row !in 0 until grid.rowCount) throw IllegalArgumentException("Cell $col,$row outside the ${colCount}x${grid.rowCount} map")
+        return row * colCount + col
+    }
 }
 
 fun path(resource: String): Int {
-    val layout = parseLayout(resource)
-
-    var tracked = connectedFrom(layout, layout.start)
-    tracked.forEach {layout.at(it.pos).path = true }
-    var step = 1
-
-    println(
-        """
-        layout   : $layout
-        step : 
-          $step  $tracked
-    """.trimIndent()
-    )
-
-
-    while (tracked.first().pos != tracked.last().pos) {
-        tracked = tracked.map { traverse(layout, it) }.toList()
-        tracked.forEach {layout.at(it.pos).path = true }
-        ++step
-        println("  $step  $tracked")
-    }
-    println("steps ahead : " + step)
-
-    printLayout(layout)
-
-    println("internal cells : " +
-    layout.cells
-        .map { row ->
-            var transitionNorth = false
-            var transitionSouth = false
-            var inside = false
-            var totalInside = 0
-            for (cell in row) {
-                if(cell.path) {
-                    if (cell.pipe.transitionNorth()) {
-                        if(transitionSouth) {
-                            inside = !inside
-                            transitionSouth = false
-                        }
-                        else transitionNorth = !transitionNorth
-                    }
-                    if (cell.pipe.transitionSouth()) {
-                        if(transitionNorth) {
-                            inside = !inside
-                            transitionNorth = false
-                        }
-                        else transitionSouth = !transitionSouth
-                    }
-                }
-                else if(inside) ++totalInside
-            }
-            totalInside
-        }
-        .sum()
-    )
-
-    return step
+    val trace = PipeGrid.parse(resource).trace()
+    println("$resource steps ahead : ${trace.farthest()}, internal cells : ${trace.interior}")
+    return trace.farthest()
 }
 
 fun main() {
@@ -192,4 +191,9 @@ fun main() {
     path("2023/10/sample2") // 8, 1
     path("2023/10/sample3") // 23, 4
     path("2023/10/puzzle") // 7005, 417
-}
\ No newline at end of file
+
+    val index = LoopIndex(PipeGrid.parse("2023/10/sample3"))
+    println("sample3 inside 2,6 : ${index.inside(2, 6)}, inside 0,0 : ${index.inside(0, 0)}") // true, false
+    println("sample3 interior rows 0-5 : ${index.interior(0, 0, index.grid.colCount - 1, 5)}") // 0
+    println("puzzle interior : ${LoopIndex(PipeGrid.parse("2023/10/puzzle")).let { it.interior(0, 0, it.grid.colCount - 1, it.grid.rowCount - 1) }}") // 417
+}
@@ -13,45 +13,97 @@ data class Galaxy(var col : Long, var row : Long){
     }
 }
 
-fun print(layout: List<List<Char>>) =
-    println(
-        layout.map { row -> "" + row.joinToString("") }
-            .joinToString("\n")
-    )
-
 fun stepsBetween(galaxyA: Galaxy, galaxyB: Galaxy) = abs(galaxyA.row - galaxyB.row) + abs(galaxyA.col - galaxyB.col)
 
-fun parseGalaxy(resource: String, expansion: Int) {
+// sum of pairwise distances as base + (expansion - 1) * emptyLines, linear in the expansion factor
+data class GalaxyDistances(val base: Long, val emptyLines: Long) {
+    fun at(expansion: Long): Long {
+        if (expansion < 1) throw IllegalArgumentException("Expansion factor $expansion below 1")
+        return Math.addExact(base, Math.multiplyExact(expansion - 1, emptyLines))
+    }
+
+    companion object {
+        fun of(resource: String): GalaxyDistances {
+            val bytes = Resources.toByteArray(Resources.getResource(resource))
+            var rows = IntArray(64)
+            var cols = IntArray(64)
+            var count = 0
+            var colCount = 0
+            var row = 0
+            var col = 0
+            for (b in bytes) {
+                when (b.toInt()) {
+                    '\n'.code -> { if (col > 0) ++row; col = 0 }
+                    '\r'.code -> {}
+                    else -> {
+                        if (b.toInt() == '#'.code) {
+                            if (count == rows.size) {
+                                rows = rows.copyOf(count * 2)
+                                cols = cols.copyOf(count * 2)
+                            }
+                            rows[count] = row
+                            cols[count++] = col
+                        }
+                        colCount = maxOf(colCount, ++col)
+                    }
+                }
+            }
+            if (col > 0) ++row
+            // rows come out of the scan already ordered, columns need a sort
+            cols.sort(0, count)
+            val rowAxis = axisDistances(rows, count, row)
+            val colAxis = axisDistances(cols, count, colCount)
+            return GalaxyDistances(rowAxis.first + colAxis.first, rowAxis.second + colAxis.second)
+        }
+
+        // pairwise distance sum over sorted coordinates, and over the empty lines crossed, by prefix sums
+        private fun axisDistances(sorted: IntArray, count: Int, size: Int): Pair<Long, Long> {
+            val occupied = BooleanArray(size)
+            for (i in 0 until count) occupied[sorted[i]] = true
+            val emptyBefore = IntArray(size)
+            for (i in 1 until size) emptyBefore[i] = emptyBefore[i - 1] + if (occupied[i - 1]) 0 else 1
+
+            var base = 0L
+            var empty = 0L
+            var basePrefix = 0L
+            var emptyPrefix = 0L
+            for (i in 0 until count) {
+                val coordinate = sorted[i].toLong()
+                val crossed = emptyBefore[sorted[i]].toLong()
+                base += coordinate * i - basePrefix
+                empty += crossed * i - emptyPrefix
+                basePrefix += coordinate
+                emptyPrefix += crossed
+            }
+            return base to empty
+        }
+    }
+}
+
+// shifts every galaxy past each empty line and sums all pairs, kept as a reference for GalaxyDistances
+fun sumShortestPathsByPairs(resource: String, expansion: Int): Long {
     val netExpansion = (expansion - 1).toLong()
-    val layout = Resources.readLines(Resources.getResource(resource), Charset.defaultCharset())
-        .map {it.toCharArray().toMutableList() }
-        .toMutableList()
-    print(layout)
+    val layout = Resources.readLines(Resources.getResource(resource), Charset.defaultCharset()).filter { it.isNotEmpty() }
 
     val galaxys = mutableListOf<Galaxy>()
-    for( row in 0..<layout.size )
-        for( col in 0..<layout.first().size)
-            if( layout[row][col] == '#' ) galaxys.add(Galaxy(col.toLong(), row.toLong()))
-    println("initial galaxys\n$galaxys")
+    for (row in layout.indices)
+        for (col in 0..<layout.first().length)
+            if (layout[row][col] == '#') galaxys.add(Galaxy(col.toLong(), row.toLong()))
 
-    for ( row in layout.size-1 downTo 0 )
-        if (layout[row].none { it == '#' }) {
-            galaxys.filter { it.row > row }.forEach { it.expand(0, netExpansion) }
-        }
+    for (row in layout.size - 1 downTo 0)
+        if (layout[row].none { it == '#' }) galaxys.filter { it.row > row }.forEach { it.expand(0, netExpansion) }
 
-    for ( col in layout.first().size-1 downTo 0)
-        if(layout.none { it[col] == '#' }) {
-            galaxys.filter { it.col > col }.forEach { it.expand(netExpansion, 0) }
-        }
+    for (col in layout.first().length - 1 downTo 0)
+        if (layout.none { it[col] == '#' }) galaxys.filter { it.col > col }.forEach { it.expand(netExpansion, 0) }
 
     var sumShortestPaths = 0L
-    for( i in 0..<galaxys.size){
-        for( j in i..<galaxys.size) {
-            sumShortestPaths += stepsBetween(galaxys[i], galaxys[j])
-            println("$i $j ${stepsBetween(galaxys[i], galaxys[j])}")
-        }
-    }
-    println("sum of shortest paths: $sumShortestPaths")
+    for (i in 0..<galaxys.size)
+        for (j in i + 1..<galaxys.size) sumShortestPaths += stepsBetween(galaxys[i], galaxys[j])
+    return sumShortestPaths
+}
+
+fun parseGalaxy(resource: String, expansion: Int) {
+    println("$resource sum of shortest paths at $expansion: ${GalaxyDistances.of(resource).at(expansion.toLong())}")
 }
 
 fun main() {
@@ -62,4 +114,5 @@ fun main() {
     parseGalaxy("2023/11/sample", 10) // 1030
     parseGalaxy("2023/11/sample", 100) // 8410
     parseGalaxy("2023/11/puzzle", 1000000) // 357134560737
+    println("2023/11/puzzle sum of shortest paths by pairs at 1000000: ${sumShortestPathsByPairs("2023/11/puzzle", 1000000)}") // 357134560737
 }